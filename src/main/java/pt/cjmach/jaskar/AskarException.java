@@ -50,6 +50,19 @@ public final class AskarException extends Exception {
         this.errorCode = ErrorCode.CUSTOM;
     }
 
+    /**
+     * Creates an exception raised by this library rather than the native one.
+     * No stack trace is filled in, as these are expected conditions that may
+     * be raised often, like {@link ErrorCode#BUSY}.
+     *
+     * @param errorCode
+     * @param message
+     */
+    AskarException(ErrorCode errorCode, String message) {
+        super(message, null, false, false);
+        this.errorCode = errorCode;
+    }
+
     /**
      *
      * @return
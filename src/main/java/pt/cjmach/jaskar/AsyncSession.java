@@ -0,0 +1,814 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import pt.cjmach.jaskar.lib.AskarCallback;
+import pt.cjmach.jaskar.lib.AskarLibrary;
+import pt.cjmach.jaskar.lib.ByteBuffer;
+import pt.cjmach.jaskar.lib.EntryOperation;
+import pt.cjmach.jaskar.lib.ErrorCode;
+import pt.cjmach.jaskar.lib.SizeT;
+
+/**
+ * Non-blocking view of an active connection to the store backend. Every
+ * operation returns a {@link CompletableFuture} that is completed from the
+ * library callback thread, so dependent stages should not block.
+ *
+ * @author cmachado
+ */
+public class AsyncSession {
+
+    private final AsyncStore store;
+    private final String profile;
+    private final AtomicReference<SizeT> handle;
+    private final boolean isTransaction;
+    private final Session session;
+    private final List<Consumer<WriteListener>> pendingWrites = new ArrayList<>();
+    private final ConcurrencyLimiter.Permit permit;
+
+    /**
+     *
+     * @param store
+     * @param profile
+     * @param handle
+     * @param isTransaction
+     * @param permit the concurrency limiter slot released on close, or
+     * {@code null}.
+     */
+    AsyncSession(AsyncStore store, String profile, SizeT handle, boolean isTransaction, ConcurrencyLimiter.Permit permit) {
+        this.store = store;
+        this.profile = profile;
+        this.handle = new AtomicReference<>(handle);
+        this.isTransaction = isTransaction;
+        this.permit = permit;
+        this.session = new Session(this);
+    }
+
+    /**
+     * Gets the blocking view of this session.
+     *
+     * @return
+     */
+    public Session blocking() {
+        return session;
+    }
+
+    /**
+     *
+     * @return the profile this session was opened on, or {@code null} if it
+     * was opened on the default profile without naming it.
+     */
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     *
+     * @return the store this session was opened on.
+     */
+    AsyncStore getStore() {
+        return store;
+    }
+
+    /**
+     *
+     * @return whether the session has not been closed.
+     */
+    boolean isOpen() {
+        return handle.get() != null;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isTransaction() {
+        return isTransaction;
+    }
+
+    /**
+     * Start a batch of record updates to be submitted back-to-back, with a
+     * single wait for the whole batch.
+     *
+     * @return a new, empty, batch bound to this session.
+     */
+    public SessionBatch batch() {
+        Objects.requireNonNull(handle.get(), "Cannot update with a closed session.");
+        return new SessionBatch(this).timeout(store.getDefaultTimeout());
+    }
+
+    /**
+     *
+     * @param commit
+     * @return
+     */
+    public CompletableFuture<Void> close(boolean commit) {
+        // only the first of concurrent closes gets the handle.
+        SizeT h = handle.getAndSet(null);
+        if (h == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        ErrorCode errorCode = AskarLibrary.askar_session_close(h, (byte) (commit ? 1 : 0), AskarCallback.BASIC, callback.getId());
+        CompletableFuture<Void> result = Futures.submit(callback, errorCode);
+        if (permit != null) {
+            result = result.whenComplete((v, ex) -> permit.release());
+        }
+        if (!isTransaction) {
+            return result;
+        }
+        return result.whenComplete((v, ex) -> {
+            List<Consumer<WriteListener>> writes;
+            synchronized (pendingWrites) {
+                writes = new ArrayList<>(pendingWrites);
+                pendingWrites.clear();
+            }
+            if (commit && ex == null) {
+                writes.forEach(store::fireWrite);
+            }
+        });
+    }
+
+    /**
+     * Commit the pending transaction.
+     *
+     * @return
+     */
+    public CompletableFuture<Void> commit() {
+        Objects.requireNonNull(handle.get(), "Cannot commit a closed session.");
+        if (!isTransaction) {
+            throw new IllegalStateException("Session is not a transation.");
+        }
+        return close(true);
+    }
+
+    /**
+     * Count the number of entries for a given record category.
+     *
+     * @param category
+     * @param tagFilter
+     * @return
+     */
+    public CompletableFuture<Long> count(String category, String tagFilter) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot count from a closed session.");
+        AskarCallback.Long callback = new AskarCallback.Long();
+        Memory filter = Wql.encoded(tagFilter);
+        ErrorCode errorCode = filter != null
+                ? AskarLibrary.askar_session_count(h, category, filter, AskarCallback.LONG, callback.getId())
+                : AskarLibrary.askar_session_count(h, category, tagFilter, AskarCallback.LONG, callback.getId());
+        Reference.reachabilityFence(filter);
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Retrieve the current record at '(category, name)'.
+     *
+     * @param category
+     * @param name
+     * @param forUpdate Set to {@code true} when in a transaction to create an update lock on the associated record, if supported by the store backend.
+     * @return a future completed with the entry, or {@code null} if not found.
+     */
+    public CompletableFuture<Entry> fetch(String category, String name, boolean forUpdate) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot fetch from a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        if (!store.mightContain(profile, category, name)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        AskarCallback.Pointer callback = new AskarCallback.Pointer();
+        long startedAt = System.nanoTime();
+        ErrorCode errorCode = AskarLibrary.askar_session_fetch(h, category, name, (byte) (forUpdate ? 1 : 0), AskarCallback.POINTER, callback.getId());
+        return measured(ConcurrencyLimiter.Sample.READ, startedAt, Futures.submit(callback, errorCode))
+                .thenApply(p -> p == Pointer.NULL ? null : new Entry(p, 0));
+    }
+
+    /**
+     * Retrieve all records matching the given 'category' and 'tagFilter'.
+     *
+     * @param category
+     * @param tagFilter
+     * @param limit
+     * @param orderBy
+     * @param descending
+     * @param forUpdate
+     * @return
+     * @see Session#fetchAll(java.lang.String, java.lang.String, long, java.lang.String, boolean, boolean)
+     */
+    public CompletableFuture<EntryList> fetchAll(String category, String tagFilter, long limit, String orderBy, boolean descending, boolean forUpdate) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot fetch from a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(tagFilter);
+        Objects.requireNonNull(orderBy);
+        AskarCallback.Pointer callback = new AskarCallback.Pointer();
+        Memory filter = Wql.encoded(tagFilter);
+        ErrorCode errorCode = filter != null
+                ? AskarLibrary.askar_session_fetch_all(h,
+                        category, filter, limit, orderBy, (byte) (descending ? 1 : 0),
+                        (byte) (forUpdate ? 1 : 0), AskarCallback.POINTER, callback.getId())
+                : AskarLibrary.askar_session_fetch_all(h,
+                        category, tagFilter, limit, orderBy, (byte) (descending ? 1 : 0),
+                        (byte) (forUpdate ? 1 : 0), AskarCallback.POINTER, callback.getId());
+        Reference.reachabilityFence(filter);
+        return Futures.submit(callback, errorCode).thenApply(p -> {
+            if (p == Pointer.NULL) {
+                return null;
+            }
+            try {
+                return new EntryList(p);
+            } catch (AskarException ex) {
+                AskarLibrary.askar_entry_list_free(p);
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    /**
+     * Retrieve all keys matching the given filters.
+     *
+     * @param algorithm
+     * @param thumbprint
+     * @param tagFilter
+     * @param limit
+     * @param forUpdate
+     * @return
+     */
+    public CompletableFuture<KeyEntryList> fetchAllKeys(KeyAlgorithm algorithm, String thumbprint, String tagFilter, long limit, boolean forUpdate) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot fetch from a closed session.");
+        AskarCallback.Pointer callback = new AskarCallback.Pointer();
+        Memory filter = Wql.encoded(tagFilter);
+        ErrorCode errorCode = filter != null
+                ? AskarLibrary.askar_session_fetch_all_keys(h, algorithm.getAlgorithm(), thumbprint, filter, limit, (byte) (forUpdate ? 1 : 0), AskarCallback.POINTER, callback.getId())
+                : AskarLibrary.askar_session_fetch_all_keys(h, algorithm.getAlgorithm(), thumbprint, tagFilter, limit, (byte) (forUpdate ? 1 : 0), AskarCallback.POINTER, callback.getId());
+        Reference.reachabilityFence(filter);
+        return Futures.submit(callback, errorCode)
+                .thenApply(p -> p == Pointer.NULL ? null : new KeyEntryList(p));
+    }
+
+    /**
+     * Fetch an existing key from the store.
+     *
+     * @param name
+     * @param forUpdate Set to {@code true} when in a transaction to create an update lock on the associated record, if supported by the store backend.
+     * @return a future completed with the key entry, or {@code null} if not found.
+     */
+    public CompletableFuture<KeyEntry> fetchKey(String name, boolean forUpdate) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot fetch from a closed session.");
+        Objects.requireNonNull(name);
+        AskarCallback.Pointer callback = new AskarCallback.Pointer();
+        ErrorCode errorCode = AskarLibrary.askar_session_fetch_key(h, name, (byte) (forUpdate ? 1 : 0), AskarCallback.POINTER, callback.getId());
+        return Futures.submit(callback, errorCode)
+                .thenApply(p -> p == Pointer.NULL ? null : new KeyEntry(p, 0));
+    }
+
+    /**
+     * Insert a new record into the store.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return
+     */
+    public CompletableFuture<Void> insert(String category, String name, String tags, byte[] value, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot insert with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        return update(EntryOperation.INSERT, category, name, tags, value, expiryMs);
+    }
+
+    /**
+     * Insert a new record into the store, with structured tags.
+     *
+     * @param category
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @return
+     */
+    public CompletableFuture<Void> insert(String category, String name, byte[] value, Tags tags, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot insert with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        try (ByteBuffer.ByValue buffer = value != null ? new ByteBuffer.ByValue(value) : new ByteBuffer.ByValue()) {
+            return update(EntryOperation.INSERT, category, name, tags, buffer, expiryMs);
+        }
+    }
+
+    /**
+     * Insert a new record into the store, reading the value from the remaining
+     * bytes of a direct buffer without copying it first. The buffer position
+     * is not changed.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value a direct buffer.
+     * @param expiryMs
+     * @return
+     */
+    public CompletableFuture<Void> insert(String category, String name, String tags, java.nio.ByteBuffer value, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot insert with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(value);
+        try (ByteBuffer.ByValue buffer = new ByteBuffer.ByValue(value)) {
+            return update(EntryOperation.INSERT, category, name, tags, buffer, expiryMs);
+        }
+    }
+
+    /**
+     * Insert a local key instance into the store.
+     *
+     * @param key
+     * @param name
+     * @param metadata
+     * @param tags
+     * @param expiryMs
+     * @return
+     */
+    public CompletableFuture<Void> insertKey(Key key, String name, String metadata, String tags, long expiryMs) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot insert key with a closed session.");
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(metadata);
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        ErrorCode errorCode = AskarLibrary.askar_session_insert_key(h, key.handle,
+                name, metadata, tags, expiryMs, AskarCallback.BASIC, callback.getId());
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Remove a record from the store.
+     *
+     * @param category
+     * @param name
+     * @return
+     */
+    public CompletableFuture<Void> remove(String category, String name) {
+        Objects.requireNonNull(handle.get(), "Cannot remove with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        return update(EntryOperation.REMOVE, category, name, null, (byte[]) null, 0);
+    }
+
+    /**
+     * Remove all records in the store matching a given 'category' and 'tagFilter'.
+     *
+     * @param category
+     * @param tagFilter
+     * @return
+     */
+    public CompletableFuture<Long> removeAll(String category, String tagFilter) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot remove with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(tagFilter);
+        AskarCallback.Long callback = new AskarCallback.Long();
+        Memory filter = Wql.encoded(tagFilter);
+        ErrorCode errorCode = filter != null
+                ? AskarLibrary.askar_session_remove_all(h, category, filter, AskarCallback.LONG, callback.getId())
+                : AskarLibrary.askar_session_remove_all(h, category, tagFilter, AskarCallback.LONG, callback.getId());
+        Reference.reachabilityFence(filter);
+        return written(Futures.submit(callback, errorCode),
+                listener -> listener.entriesRemoved(profile, category, tagFilter));
+    }
+
+    /**
+     * Remove an existing key from the store.
+     *
+     * @param name
+     * @return
+     */
+    public CompletableFuture<Void> removeKey(String name) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot remove with a closed session.");
+        Objects.requireNonNull(name);
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        ErrorCode errorCode = AskarLibrary.askar_session_remove_key(h, name, AskarCallback.BASIC, callback.getId());
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Replace the value and tags of a record in the store.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return
+     */
+    public CompletableFuture<Void> replace(String category, String name, String tags, byte[] value, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot replace with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        return update(EntryOperation.REPLACE, category, name, tags, value, expiryMs);
+    }
+
+    /**
+     * Replace the value and tags of a record in the store, with structured tags.
+     *
+     * @param category
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @return
+     */
+    public CompletableFuture<Void> replace(String category, String name, byte[] value, Tags tags, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot replace with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        try (ByteBuffer.ByValue buffer = value != null ? new ByteBuffer.ByValue(value) : new ByteBuffer.ByValue()) {
+            return update(EntryOperation.REPLACE, category, name, tags, buffer, expiryMs);
+        }
+    }
+
+    /**
+     * Replace the value and tags of a record in the store, reading the value
+     * from the remaining bytes of a direct buffer without copying it first.
+     * The buffer position is not changed.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value a direct buffer.
+     * @param expiryMs
+     * @return
+     */
+    public CompletableFuture<Void> replace(String category, String name, String tags, java.nio.ByteBuffer value, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot replace with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(value);
+        try (ByteBuffer.ByValue buffer = new ByteBuffer.ByValue(value)) {
+            return update(EntryOperation.REPLACE, category, name, tags, buffer, expiryMs);
+        }
+    }
+
+    /**
+     * Roll back the pending transaction.
+     *
+     * @return
+     */
+    public CompletableFuture<Void> rollback() {
+        Objects.requireNonNull(handle.get(), "Cannot rollback a closed session.");
+        if (!isTransaction) {
+            throw new IllegalStateException("Session is not a transation.");
+        }
+        return close(false);
+    }
+
+    /**
+     * Insert a new record into the store, reporting an existing record as
+     * {@link UpdateStatus#DUPLICATE} instead of failing. Expected conflicts
+     * are mapped from the error code alone, without fetching the error
+     * message, so this suits workloads where they are common. The message of
+     * a conflict is not available, see {@link UpdateStatus}.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return a future completed with the status, or completed exceptionally
+     * with an {@link AskarException} on any other error.
+     */
+    public CompletableFuture<UpdateStatus> tryInsert(String category, String name, String tags, byte[] value, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot insert with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        return tryUpdate(EntryOperation.INSERT, category, name, tags, value, expiryMs);
+    }
+
+    /**
+     * Insert a new record into the store, with structured tags, reporting an
+     * existing record as {@link UpdateStatus#DUPLICATE} instead of failing.
+     *
+     * @param category
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @return
+     * @see #tryInsert(String, String, String, byte[], long)
+     */
+    public CompletableFuture<UpdateStatus> tryInsert(String category, String name, byte[] value, Tags tags, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot insert with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        return tryUpdate(EntryOperation.INSERT, category, name, tags, value, expiryMs);
+    }
+
+    /**
+     * Remove a record from the store, reporting a missing record as
+     * {@link UpdateStatus#NOT_FOUND} instead of failing.
+     *
+     * @param category
+     * @param name
+     * @return
+     * @see #tryInsert(String, String, String, byte[], long)
+     */
+    public CompletableFuture<UpdateStatus> tryRemove(String category, String name) {
+        Objects.requireNonNull(handle.get(), "Cannot remove with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        return tryUpdate(EntryOperation.REMOVE, category, name, (String) null, null, 0);
+    }
+
+    /**
+     * Replace the value and tags of a record in the store, reporting a
+     * missing record as {@link UpdateStatus#NOT_FOUND} instead of failing.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return
+     * @see #tryInsert(String, String, String, byte[], long)
+     */
+    public CompletableFuture<UpdateStatus> tryReplace(String category, String name, String tags, byte[] value, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot replace with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        return tryUpdate(EntryOperation.REPLACE, category, name, tags, value, expiryMs);
+    }
+
+    /**
+     * Replace the value and tags of a record in the store, with structured
+     * tags, reporting a missing record as {@link UpdateStatus#NOT_FOUND}
+     * instead of failing.
+     *
+     * @param category
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @return
+     * @see #tryInsert(String, String, String, byte[], long)
+     */
+    public CompletableFuture<UpdateStatus> tryReplace(String category, String name, byte[] value, Tags tags, long expiryMs) {
+        Objects.requireNonNull(handle.get(), "Cannot replace with a closed session.");
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(name);
+        return tryUpdate(EntryOperation.REPLACE, category, name, tags, value, expiryMs);
+    }
+
+    /**
+     * Replace the metadata and tags on an existing key in the store.
+     *
+     * @param name
+     * @param metaData
+     * @param tags
+     * @param expiryMs
+     * @return
+     */
+    public CompletableFuture<Void> updateKey(String name, String metaData, String tags, long expiryMs) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot update with a closed session.");
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(metaData);
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        ErrorCode errorCode = AskarLibrary.askar_session_update_key(h, name, metaData, tags, expiryMs, AskarCallback.BASIC, callback.getId());
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Submits a single 'askar_session_update' call. The library copies the
+     * value before returning, so the argument buffer is released right away.
+     *
+     * @param operation
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return
+     */
+    private CompletableFuture<Void> update(EntryOperation operation, String category, String name, String tags, byte[] value, long expiryMs) {
+        try (ByteBuffer.ByValue buffer = value != null ? new ByteBuffer.ByValue(value) : new ByteBuffer.ByValue()) {
+            return update(operation, category, name, tags, buffer, expiryMs);
+        }
+    }
+
+    /**
+     *
+     * @param operation
+     * @param category
+     * @param name
+     * @param tags
+     * @param buffer
+     * @param expiryMs
+     * @return
+     */
+    CompletableFuture<Void> update(EntryOperation operation, String category, String name, Tags tags, ByteBuffer.ByValue buffer, long expiryMs) {
+        if (tags == null) {
+            return update(operation, category, name, (String) null, buffer, expiryMs);
+        }
+        try (ByteBuffer.ByValue tagsBuffer = tags.toNative()) {
+            AskarCallback.Basic callback = new AskarCallback.Basic();
+            long startedAt = System.nanoTime();
+            ErrorCode errorCode = submitUpdate(callback, operation, category, name, tagsBuffer.data, buffer, expiryMs);
+            return written(measured(ConcurrencyLimiter.Sample.WRITE, startedAt, Futures.submit(callback, errorCode)),
+                    listener -> listener.entryWritten(profile, operation, category, name, expiryMs));
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(new AskarException(ex));
+        }
+    }
+
+    /**
+     *
+     * @param operation
+     * @param category
+     * @param name
+     * @param tags
+     * @param buffer
+     * @param expiryMs
+     * @return
+     */
+    CompletableFuture<Void> update(EntryOperation operation, String category, String name, String tags, ByteBuffer.ByValue buffer, long expiryMs) {
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        long startedAt = System.nanoTime();
+        ErrorCode errorCode = submitUpdate(callback, operation, category, name, tags, buffer, expiryMs);
+        return written(measured(ConcurrencyLimiter.Sample.WRITE, startedAt, Futures.submit(callback, errorCode)),
+                listener -> listener.entryWritten(profile, operation, category, name, expiryMs));
+    }
+
+    /**
+     * Like {@link #update(EntryOperation, String, String, String, ByteBuffer.ByValue, long)},
+     * but reports expected conflicts as a status.
+     *
+     * @param operation
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return
+     */
+    private CompletableFuture<UpdateStatus> tryUpdate(EntryOperation operation, String category, String name, String tags, byte[] value, long expiryMs) {
+        try (ByteBuffer.ByValue buffer = value != null ? new ByteBuffer.ByValue(value) : new ByteBuffer.ByValue()) {
+            AskarCallback.Basic callback = new AskarCallback.Basic();
+            long startedAt = System.nanoTime();
+            ErrorCode errorCode = submitUpdate(callback, operation, category, name, tags, buffer, expiryMs);
+            return written(measured(ConcurrencyLimiter.Sample.WRITE, startedAt, Futures.status(callback, errorCode)), UpdateStatus::isOk,
+                    listener -> listener.entryWritten(profile, operation, category, name, expiryMs));
+        }
+    }
+
+    /**
+     * Like {@link #update(EntryOperation, String, String, Tags, ByteBuffer.ByValue, long)},
+     * but reports expected conflicts as a status.
+     *
+     * @param operation
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return
+     */
+    private CompletableFuture<UpdateStatus> tryUpdate(EntryOperation operation, String category, String name, Tags tags, byte[] value, long expiryMs) {
+        if (tags == null) {
+            return tryUpdate(operation, category, name, (String) null, value, expiryMs);
+        }
+        try (ByteBuffer.ByValue buffer = value != null ? new ByteBuffer.ByValue(value) : new ByteBuffer.ByValue();
+                ByteBuffer.ByValue tagsBuffer = tags.toNative()) {
+            AskarCallback.Basic callback = new AskarCallback.Basic();
+            long startedAt = System.nanoTime();
+            ErrorCode errorCode = submitUpdate(callback, operation, category, name, tagsBuffer.data, buffer, expiryMs);
+            return written(measured(ConcurrencyLimiter.Sample.WRITE, startedAt, Futures.status(callback, errorCode)), UpdateStatus::isOk,
+                    listener -> listener.entryWritten(profile, operation, category, name, expiryMs));
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(new AskarException(ex));
+        }
+    }
+
+    /**
+     * Submits a single 'askar_session_update' call.
+     *
+     * @param callback
+     * @param operation
+     * @param category
+     * @param name
+     * @param tags
+     * @param buffer
+     * @param expiryMs
+     * @return the error code returned by the library call.
+     */
+    private ErrorCode submitUpdate(AskarCallback.Basic callback, EntryOperation operation, String category, String name, String tags, ByteBuffer.ByValue buffer, long expiryMs) {
+        SizeT h = beginUpdate(operation, category, name);
+        return AskarLibrary.askar_session_update(h, operation, category, name, buffer,
+                tags, expiryMs, AskarCallback.BASIC, callback.getId());
+    }
+
+    /**
+     * Submits a single 'askar_session_update' call, with the tags already
+     * encoded in native memory.
+     *
+     * @param callback
+     * @param operation
+     * @param category
+     * @param name
+     * @param tags
+     * @param buffer
+     * @param expiryMs
+     * @return the error code returned by the library call.
+     */
+    private ErrorCode submitUpdate(AskarCallback.Basic callback, EntryOperation operation, String category, String name, Pointer tags, ByteBuffer.ByValue buffer, long expiryMs) {
+        SizeT h = beginUpdate(operation, category, name);
+        return AskarLibrary.askar_session_update(h, operation, category, name, buffer,
+                tags, expiryMs, AskarCallback.BASIC, callback.getId());
+    }
+
+    private SizeT beginUpdate(EntryOperation operation, String category, String name) {
+        SizeT h = Objects.requireNonNull(handle.get(), "Cannot update with a closed session.");
+        if (operation != EntryOperation.REMOVE) {
+            store.nameWritten(profile, category, name);
+        }
+        return h;
+    }
+
+    /**
+     * Reports the latency of a single-record operation to the concurrency
+     * limiter the session was opened under, if any.
+     *
+     * @param <T>
+     * @param sample
+     * @param startedAt
+     * @param future
+     * @return
+     */
+    private <T> CompletableFuture<T> measured(ConcurrencyLimiter.Sample sample, long startedAt, CompletableFuture<T> future) {
+        if (permit == null) {
+            return future;
+        }
+        return future.whenComplete((result, error) -> permit.completed(sample, startedAt, error));
+    }
+
+    /**
+     * Reports a successful write to the store listeners, or holds it until
+     * commit within a transaction.
+     *
+     * @param <T>
+     * @param future
+     * @param event
+     * @return
+     */
+    private <T> CompletableFuture<T> written(CompletableFuture<T> future, Consumer<WriteListener> event) {
+        return written(future, result -> true, event);
+    }
+
+    /**
+     * Reports a write to the store listeners if its result shows it was
+     * applied, or holds it until commit within a transaction.
+     *
+     * @param <T>
+     * @param future
+     * @param applied
+     * @param event
+     * @return
+     */
+    private <T> CompletableFuture<T> written(CompletableFuture<T> future, Predicate<T> applied, Consumer<WriteListener> event) {
+        if (!store.hasWriteListeners()) {
+            return future;
+        }
+        return future.thenApply(result -> {
+            if (!applied.test(result)) {
+                return result;
+            }
+            if (isTransaction) {
+                synchronized (pendingWrites) {
+                    pendingWrites.add(event);
+                }
+            } else {
+                store.fireWrite(event);
+            }
+            return result;
+        });
+    }
+}
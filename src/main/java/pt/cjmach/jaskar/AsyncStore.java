@@ -0,0 +1,516 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import pt.cjmach.jaskar.lib.AskarCallback;
+import pt.cjmach.jaskar.lib.AskarLibrary;
+import pt.cjmach.jaskar.lib.ErrorCode;
+import pt.cjmach.jaskar.lib.SizeT;
+import pt.cjmach.jaskar.lib.StringList;
+
+/**
+ * Non-blocking view of an opened store. Every operation returns a
+ * {@link CompletableFuture} that is completed from the library callback
+ * thread, so dependent stages should not block.
+ *
+ * @author cmachado
+ */
+public class AsyncStore {
+
+    private final SizeT handle;
+    private final String uri;
+    private final Store store;
+    private final List<WriteListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, NameFilter> nameFilters = new ConcurrentHashMap<>();
+    private volatile ConcurrencyLimiter limiter;
+    private volatile Duration defaultTimeout;
+
+    /**
+     *
+     * @param handle
+     * @param uri
+     */
+    AsyncStore(SizeT handle, String uri) {
+        this.handle = handle;
+        this.uri = uri;
+        this.store = new Store(this);
+    }
+
+    /**
+     * Gets the blocking view of this store.
+     *
+     * @return
+     */
+    public Store blocking() {
+        return store;
+    }
+
+    /**
+     *
+     * @return
+     */
+    SizeT getHandle() {
+        return handle;
+    }
+
+    /**
+     * Get the database URL of this store.
+     *
+     * @return
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * Set the maximum time blocking operations on this store, and on its
+     * sessions and scans, wait for the library.
+     *
+     * @param timeout the timeout, or {@code null} to wait forever.
+     * @see Store#withTimeout(java.time.Duration)
+     */
+    public void setDefaultTimeout(Duration timeout) {
+        this.defaultTimeout = timeout;
+    }
+
+    /**
+     *
+     * @return the default timeout of blocking operations, or {@code null} if
+     * they wait forever.
+     */
+    public Duration getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * Register a listener for the record writes done through the sessions of
+     * this store.
+     *
+     * @param listener
+     */
+    public void addWriteListener(WriteListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    /**
+     *
+     * @param listener
+     */
+    public void removeWriteListener(WriteListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     *
+     * @return
+     */
+    boolean hasWriteListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     *
+     * @param profile
+     * @param category
+     * @param filter the filter, or {@code null} to remove it.
+     */
+    void setNameFilter(String profile, String category, NameFilter filter) {
+        String key = profile + '\0' + category;
+        if (filter == null) {
+            nameFilters.remove(key);
+        } else {
+            nameFilters.put(key, filter);
+        }
+    }
+
+    /**
+     *
+     * @param profile
+     * @param category
+     * @param name
+     * @return {@code false} if the name filter of the category shows that the
+     * record does not exist.
+     */
+    boolean mightContain(String profile, String category, String name) {
+        if (profile == null || nameFilters.isEmpty()) {
+            return true;
+        }
+        NameFilter filter = nameFilters.get(profile + '\0' + category);
+        return filter == null || filter.mightContain(name);
+    }
+
+    /**
+     * Adds a name about to be written to the name filter of its category. A
+     * session opened without naming its profile adds it to the filters of
+     * every profile.
+     *
+     * @param profile
+     * @param category
+     * @param name
+     */
+    void nameWritten(String profile, String category, String name) {
+        if (nameFilters.isEmpty()) {
+            return;
+        }
+        if (profile != null) {
+            NameFilter filter = nameFilters.get(profile + '\0' + category);
+            if (filter != null) {
+                filter.add(name);
+            }
+            return;
+        }
+        String suffix = '\0' + category;
+        nameFilters.forEach((key, filter) -> {
+            if (key.endsWith(suffix)) {
+                filter.add(name);
+            }
+        });
+    }
+
+    /**
+     * Reports a write to every registered listener.
+     *
+     * @param event
+     */
+    void fireWrite(Consumer<WriteListener> event) {
+        for (WriteListener listener : listeners) {
+            event.accept(listener);
+        }
+    }
+
+    /**
+     * Close the store instance, waiting for any shutdown procedures to complete.
+     *
+     * @param alsoRemove
+     * @return
+     */
+    public CompletableFuture<Boolean> close(boolean alsoRemove) {
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        ErrorCode errorCode = AskarLibrary.askar_store_close(handle, AskarCallback.BASIC, callback.getId());
+        return Futures.submit(callback, errorCode).thenCompose(result -> {
+            if (alsoRemove) {
+                return remove(uri);
+            }
+            return CompletableFuture.completedFuture(true);
+        });
+    }
+
+    /**
+     * Copy to a new store instance using a database URL.
+     *
+     * @param toStore
+     * @param fromProfile
+     * @param toProfile
+     * @return
+     */
+    public CompletableFuture<Void> copyProfile(AsyncStore toStore, String fromProfile, String toProfile) {
+        Objects.requireNonNull(toStore);
+        Objects.requireNonNull(fromProfile);
+        Objects.requireNonNull(toProfile);
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        ErrorCode errorCode = AskarLibrary.askar_store_copy_profile(handle, toStore.handle, fromProfile, toProfile, AskarCallback.BASIC, callback.getId());
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Copy to a new store instance using a database URL.
+     *
+     * @param uri
+     * @param method
+     * @param passKey
+     * @param recreate
+     * @return
+     */
+    public CompletableFuture<AsyncStore> copyTo(String uri, StoreKeyMethod method, String passKey, boolean recreate) {
+        Objects.requireNonNull(uri);
+        Objects.requireNonNull(method);
+        Objects.requireNonNull(passKey);
+        AskarCallback.SizeT callback = new AskarCallback.SizeT();
+        ErrorCode errorCode = AskarLibrary.askar_store_copy(handle, uri, method.getMethod(), passKey, (byte) (recreate ? 1 : 0), AskarCallback.SIZE_T, callback.getId());
+        return Futures.submit(callback, errorCode)
+                .thenApply(storeHandle -> new AsyncStore(storeHandle, uri));
+    }
+
+    /**
+     * Create a new profile with the given profile name.
+     *
+     * @param name
+     * @return
+     */
+    public CompletableFuture<String> createProfile(String name) {
+        Objects.requireNonNull(name);
+        AskarCallback.String callback = new AskarCallback.String();
+        ErrorCode errorCode = AskarLibrary.askar_store_create_profile(handle, name, AskarCallback.STRING, callback.getId());
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Get the default profile name used when opening the store.
+     *
+     * @return
+     */
+    public CompletableFuture<String> getDefaultProfile() {
+        AskarCallback.String callback = new AskarCallback.String();
+        ErrorCode errorCode = AskarLibrary.askar_store_get_default_profile(handle, AskarCallback.STRING, callback.getId());
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Get the details of all store profiles.
+     *
+     * @return
+     */
+    public CompletableFuture<String[]> listProfiles() {
+        AskarCallback.Pointer callback = new AskarCallback.Pointer();
+        ErrorCode errorCode = AskarLibrary.askar_store_list_profiles(handle, AskarCallback.POINTER, callback.getId());
+        return Futures.submit(callback, errorCode).thenApply(results -> {
+            if (results == Pointer.NULL) {
+                return null;
+            }
+            try (StringList list = new StringList(results)) {
+                return list.toArray();
+            }
+        });
+    }
+
+    /**
+     * Create a new session against the store.
+     *
+     * @param isTransaction
+     * @return
+     */
+    public CompletableFuture<AsyncSession> openSession(boolean isTransaction) {
+        return getDefaultProfile().thenCompose(profile -> openSession(profile, isTransaction));
+    }
+
+    /**
+     * Create a new session against the store.
+     *
+     * @param profile
+     * @param isTransaction
+     * @return
+     */
+    public CompletableFuture<AsyncSession> openSession(String profile, boolean isTransaction) {
+        ConcurrencyLimiter l = limiter;
+        ConcurrencyLimiter.Permit permit = null;
+        if (l != null) {
+            try {
+                permit = l.tryAcquire();
+            } catch (AskarException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+        return openSession(profile, isTransaction, permit);
+    }
+
+    /**
+     *
+     * @param profile
+     * @param isTransaction
+     * @param permit the concurrency limiter slot held by the session, or
+     * {@code null} if it is not limited.
+     * @return
+     */
+    CompletableFuture<AsyncSession> openSession(String profile, boolean isTransaction, ConcurrencyLimiter.Permit permit) {
+        AskarCallback.SizeT callback = new AskarCallback.SizeT();
+        ErrorCode errorCode = AskarLibrary.askar_session_start(handle, profile, (byte) (isTransaction ? 1 : 0), AskarCallback.SIZE_T, callback.getId());
+        CompletableFuture<AsyncSession> result = Futures.submit(callback, errorCode)
+                .thenApply(sessionHandle -> new AsyncSession(this, profile, sessionHandle, isTransaction, permit));
+        if (permit == null) {
+            return result;
+        }
+        return result.whenComplete((session, ex) -> {
+            permit.started(ex != null);
+            if (ex != null) {
+                permit.release();
+            }
+        });
+    }
+
+    /**
+     * Cap the number of sessions open at the same time.
+     *
+     * @param limiter the limiter, or {@code null} to remove the cap. Sessions
+     * already open are not affected.
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     *
+     * @return the current limiter, or {@code null}.
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Replace the wrapping key on a store.
+     *
+     * @param method
+     * @param passKey
+     * @return
+     */
+    public CompletableFuture<Void> rekey(StoreKeyMethod method, String passKey) {
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        ErrorCode errorCode = AskarLibrary.askar_store_rekey(handle, method.getMethod(), passKey, AskarCallback.BASIC, callback.getId());
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Remove an existing profile with the given profile name.
+     *
+     * @param name
+     * @return
+     */
+    public CompletableFuture<Boolean> removeProfile(String name) {
+        Objects.requireNonNull(name);
+        AskarCallback.Byte callback = new AskarCallback.Byte();
+        ErrorCode errorCode = AskarLibrary.askar_store_remove_profile(handle, name, AskarCallback.BYTE, callback.getId());
+        return Futures.submit(callback, errorCode).thenApply(removed -> removed != 0);
+    }
+
+    /**
+     * Change the name of an existing profile.
+     *
+     * @param oldName
+     * @param newName
+     * @return
+     */
+    public CompletableFuture<Boolean> renameProfile(String oldName, String newName) {
+        Objects.requireNonNull(oldName);
+        Objects.requireNonNull(newName);
+        AskarCallback.Byte callback = new AskarCallback.Byte();
+        ErrorCode errorCode = AskarLibrary.askar_store_rename_profile(handle, oldName, newName, AskarCallback.BYTE, callback.getId());
+        return Futures.submit(callback, errorCode).thenApply(renamed -> renamed != 0);
+    }
+
+    /**
+     * Create a new scan instance against the store.
+     *
+     * @param profile
+     * @param category
+     * @param tagFilter
+     * @param offset
+     * @param limit
+     * @param orderBy
+     * @param descending
+     * @return a new {@link Scan} instance. The result will keep an open connection to the backend until it is consumed.
+     */
+    public CompletableFuture<Scan> scanStart(String profile, String category, String tagFilter, long offset, long limit, String orderBy, boolean descending) {
+        AskarCallback.SizeT callback = new AskarCallback.SizeT();
+        Memory filter = Wql.encoded(tagFilter);
+        ErrorCode errorCode = filter != null
+                ? AskarLibrary.askar_scan_start(handle, profile, category, filter, offset, limit, orderBy, (byte) (descending ? 1 : 0), AskarCallback.SIZE_T, callback.getId())
+                : AskarLibrary.askar_scan_start(handle, profile, category, tagFilter, offset, limit, orderBy, (byte) (descending ? 1 : 0), AskarCallback.SIZE_T, callback.getId());
+        Reference.reachabilityFence(filter);
+        return Futures.submit(callback, errorCode).thenApply(Scan::new);
+    }
+
+    /**
+     * Create a publisher of the rows of a scan against the store. Each 
+     * subscriber starts its own scan and result batches are only fetched as 
+     * the subscriber requests them. The rows are published as 
+     * {@link EntryRecord}s, which stay valid after their batch is freed.
+     *
+     * @param profile
+     * @param category
+     * @param tagFilter
+     * @param offset
+     * @param limit
+     * @param orderBy
+     * @param descending
+     * @return
+     */
+    public ScanPublisher scanPublisher(String profile, String category, String tagFilter, long offset, long limit, String orderBy, boolean descending) {
+        return new ScanPublisher(this, profile, category, tagFilter, offset, limit, orderBy, descending);
+    }
+
+    /**
+     * Set the default profile name used when opening the store.
+     *
+     * @param name
+     * @return
+     */
+    public CompletableFuture<Void> setDefaultProfile(String name) {
+        Objects.requireNonNull(name);
+        AskarCallback.Basic callback = new AskarCallback.Basic();
+        ErrorCode errorCode = AskarLibrary.askar_store_set_default_profile(handle, name, AskarCallback.BASIC, callback.getId());
+        return Futures.submit(callback, errorCode);
+    }
+
+    /**
+     * Open a store instance from a database URL.
+     *
+     * @param specUri
+     * @param keyMethod
+     * @param passKey
+     * @param profile
+     * @return
+     */
+    public static CompletableFuture<AsyncStore> open(String specUri, StoreKeyMethod keyMethod, String passKey, String profile) {
+        Objects.requireNonNull(specUri);
+        Objects.requireNonNull(keyMethod);
+        Objects.requireNonNull(passKey);
+        AskarCallback.SizeT callback = new AskarCallback.SizeT();
+        ErrorCode errorCode = AskarLibrary.askar_store_open(specUri, keyMethod.getMethod(), passKey, profile, AskarCallback.SIZE_T, callback.getId());
+        return Futures.submit(callback, errorCode)
+                .thenApply(storeHandle -> new AsyncStore(storeHandle, specUri));
+    }
+
+    /**
+     * Provision a new store instance using a database URL.
+     *
+     * @param specUri
+     * @param keyMethod
+     * @param passKey
+     * @param profile
+     * @param recreate
+     * @return
+     */
+    public static CompletableFuture<AsyncStore> provision(String specUri, StoreKeyMethod keyMethod, String passKey, String profile, boolean recreate) {
+        Objects.requireNonNull(specUri);
+        Objects.requireNonNull(keyMethod);
+        Objects.requireNonNull(passKey);
+        AskarCallback.SizeT callback = new AskarCallback.SizeT();
+        ErrorCode errorCode = AskarLibrary.askar_store_provision(specUri, keyMethod.getMethod(), passKey, profile, (byte) (recreate ? 1 : 0), AskarCallback.SIZE_T, callback.getId());
+        return Futures.submit(callback, errorCode)
+                .thenApply(storeHandle -> new AsyncStore(storeHandle, specUri));
+    }
+
+    /**
+     * Remove a store instance using a database URL.
+     *
+     * @param uri
+     * @return
+     */
+    public static CompletableFuture<Boolean> remove(String uri) {
+        AskarCallback.Byte callback = new AskarCallback.Byte();
+        ErrorCode errorCode = AskarLibrary.askar_store_remove(uri, AskarCallback.BYTE, callback.getId());
+        return Futures.submit(callback, errorCode).thenApply(removed -> removed != 0);
+    }
+}
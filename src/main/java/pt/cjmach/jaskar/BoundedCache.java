@@ -0,0 +1,311 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Cache bounded by the total weight of its values, with a W-TinyLFU policy:
+ * new values enter a small LRU window, and a value leaving the window only
+ * displaces the least recently used value of the main LRU segment if it was
+ * accessed more often, as estimated by a {@link FrequencySketch}. One-off
+ * reads thus cannot flush popular values out of the cache.
+ * <p>
+ * Lookups are lock free. Recency is updated on a hit only when the lock is
+ * free, otherwise it is skipped, so readers never wait on each other.
+ *
+ * @author cmachado
+ * @param <K>
+ * @param <V>
+ */
+final class BoundedCache<K, V> {
+
+    /**
+     * Deadline of values that never expire.
+     */
+    static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private static final int WINDOW_PERCENT = 1;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final Node<K, V> window = new Node<>();
+    private final Node<K, V> main = new Node<>();
+    private long windowWeight;
+    private long mainWeight;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     *
+     * @param maximumWeight
+     * @param averageWeight an estimate of the weight of a value, which sizes
+     * the frequency sketch.
+     */
+    BoundedCache(long maximumWeight, long averageWeight) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive.");
+        }
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight * WINDOW_PERCENT / 100);
+        this.sketch = new FrequencySketch(maximumWeight / Math.max(1, averageWeight));
+    }
+
+    /**
+     *
+     * @param key
+     * @return the cached value, or {@code null} if it is absent or expired.
+     */
+    V get(K key) {
+        return get(key, null);
+    }
+
+    /**
+     *
+     * @param key
+     * @param fresh checks whether the cached value is still valid, may be
+     * {@code null}.
+     * @return the cached value, or {@code null} if it is absent, expired or
+     * no longer valid.
+     */
+    V get(K key, Predicate<? super V> fresh) {
+        sketch.increment(key.hashCode());
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if ((node.expiresAt != NO_EXPIRY && System.nanoTime() - node.expiresAt >= 0)
+                || (fresh != null && !fresh.test(node.value))) {
+            lock.lock();
+            try {
+                remove(node);
+            } finally {
+                lock.unlock();
+            }
+            misses.increment();
+            return null;
+        }
+        if (lock.tryLock()) {
+            try {
+                if (node.prev != null) {
+                    unlink(node);
+                    linkLast(node.inWindow ? window : main, node);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    /**
+     * Adds a value, unless it is heavier than the whole cache or 'valid'
+     * returns {@code false}. 'valid' is checked while holding the same lock as
+     * {@link #invalidate(java.lang.Object)}, so a value read before an
+     * invalidation can be kept out of the cache.
+     *
+     * @param key
+     * @param value
+     * @param weight
+     * @param expiresAt the {@link System#nanoTime()} deadline, or
+     * {@link #NO_EXPIRY}.
+     * @param valid may be {@code null}.
+     * @return whether the value was added, which does not mean it will be
+     * kept.
+     */
+    boolean put(K key, V value, long weight, long expiresAt, BooleanSupplier valid) {
+        if (weight > maximumWeight) {
+            return false;
+        }
+        lock.lock();
+        try {
+            if (valid != null && !valid.getAsBoolean()) {
+                return false;
+            }
+            Node<K, V> old = map.get(key);
+            if (old != null) {
+                remove(old);
+            }
+            Node<K, V> node = new Node<>(key, value, weight, expiresAt);
+            map.put(key, node);
+            linkLast(window, node);
+            windowWeight += weight;
+            evict();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @param key
+     */
+    void invalidate(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = map.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @param filter
+     */
+    void invalidateIf(Predicate<? super K> filter) {
+        lock.lock();
+        try {
+            Iterator<Node<K, V>> nodes = map.values().iterator();
+            while (nodes.hasNext()) {
+                Node<K, V> node = nodes.next();
+                if (filter.test(node.key)) {
+                    remove(node);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     */
+    void invalidateAll() {
+        invalidateIf(key -> true);
+    }
+
+    /**
+     *
+     * @return
+     */
+    CacheStats stats() {
+        lock.lock();
+        try {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), map.size(), windowWeight + mainWeight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the values overflowing the window to the main segment, admitting
+     * each one only if it is more popular than the values it would displace.
+     */
+    private void evict() {
+        while (windowWeight > windowMaximum) {
+            Node<K, V> candidate = window.next;
+            unlink(candidate);
+            windowWeight -= candidate.weight;
+            admit(candidate);
+        }
+        while (windowWeight + mainWeight > maximumWeight) {
+            Node<K, V> victim = main.next != main ? main.next : window.next;
+            evict(victim);
+        }
+    }
+
+    private void admit(Node<K, V> candidate) {
+        int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+        while (windowWeight + mainWeight + candidate.weight > maximumWeight && main.next != main) {
+            Node<K, V> victim = main.next;
+            if (candidateFrequency <= sketch.frequency(victim.key.hashCode())) {
+                map.remove(candidate.key, candidate);
+                evictions.increment();
+                return;
+            }
+            evict(victim);
+        }
+        candidate.inWindow = false;
+        linkLast(main, candidate);
+        mainWeight += candidate.weight;
+    }
+
+    private void evict(Node<K, V> node) {
+        remove(node);
+        evictions.increment();
+    }
+
+    private void remove(Node<K, V> node) {
+        map.remove(node.key, node);
+        if (node.prev != null) {
+            unlink(node);
+            if (node.inWindow) {
+                windowWeight -= node.weight;
+            } else {
+                mainWeight -= node.weight;
+            }
+        }
+    }
+
+    private static <K, V> void linkLast(Node<K, V> list, Node<K, V> node) {
+        node.prev = list.prev;
+        node.next = list;
+        list.prev.next = node;
+        list.prev = node;
+    }
+
+    private static <K, V> void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Cached value, linked into the window or main LRU list. Each list is
+     * circular around a sentinel node, with the least recently used value
+     * first.
+     */
+    private static final class Node<K, V> {
+
+        final K key;
+        final V value;
+        final long weight;
+        final long expiresAt;
+        boolean inWindow = true;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node() {
+            this(null, null, 0, NO_EXPIRY);
+            prev = this;
+            next = this;
+        }
+
+        Node(K key, V value, long weight, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+/**
+ * Snapshot of the metrics of a cache.
+ *
+ * @author cmachado
+ * @see CachingStore#stats()
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long size;
+    private final long weight;
+
+    /**
+     *
+     * @param hitCount
+     * @param missCount
+     * @param evictionCount
+     * @param size
+     * @param weight
+     */
+    CacheStats(long hitCount, long missCount, long evictionCount, long size, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    /**
+     *
+     * @return the number of lookups that found a value.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     *
+     * @return the number of lookups that found no value, or an expired one.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     *
+     * @return the ratio of hits to lookups, or 1 if there were no lookups.
+     */
+    public double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 1.0 : (double) hitCount / lookups;
+    }
+
+    /**
+     *
+     * @return the number of values dropped to stay within the size bound.
+     * Invalidated and expired values are not counted.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     *
+     * @return the number of values in the cache.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     *
+     * @return the estimated number of bytes held by the cache.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                + ", size=" + size + ", weight=" + weight + '}';
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import pt.cjmach.jaskar.lib.EntryOperation;
+
+/**
+ * Read-through cache of the records of a {@link Store}, keyed by profile,
+ * category and name. The cache is bounded by the estimated number of bytes of
+ * the cached records and uses a W-TinyLFU policy, so a scan over many
+ * records read only once does not evict the popular ones.
+ * <p>
+ * Records written with {@code insert}, {@code replace}, {@code remove} or
+ * {@code removeAll} through any session of the same store are invalidated
+ * once the write takes effect. Records given an expiry through the store are
+ * dropped when it passes. Writes done by other processes, or through another
+ * store instance, are only seen once a cached record reaches the
+ * 'expireAfterWrite' age.
+ * <p>
+ * Reads within a transaction are never cached, as they may see uncommitted
+ * writes.
+ *
+ * @author cmachado
+ */
+public class CachingStore implements Closeable {
+
+    private static final long AVERAGE_WEIGHT = 512;
+    private static final int MAX_EXPIRY_HINTS = 1 << 16;
+
+    private final Store store;
+    private final String defaultProfile;
+    private final long expireAfterWriteNanos;
+    private final BoundedCache<CacheKey, EntryRecord> cache;
+    private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CacheKey, Long> expiries = new ConcurrentHashMap<>();
+    private final WriteListener invalidator = new Invalidator();
+
+    /**
+     *
+     * @param store
+     * @param maximumWeight the maximum estimated number of bytes of the cached
+     * records.
+     * @param expireAfterWrite the maximum age of a cached record, or
+     * {@code null} to keep records until they are written, evicted or expired.
+     * @throws AskarException
+     */
+    public CachingStore(Store store, long maximumWeight, Duration expireAfterWrite) throws AskarException {
+        this.store = Objects.requireNonNull(store);
+        this.defaultProfile = store.getDefaultProfile();
+        this.expireAfterWriteNanos = expireAfterWrite == null ? 0 : expireAfterWrite.toNanos();
+        this.cache = new BoundedCache<>(maximumWeight, AVERAGE_WEIGHT);
+        store.addWriteListener(invalidator);
+    }
+
+    /**
+     *
+     * @return the cached store.
+     */
+    public Store getStore() {
+        return store;
+    }
+
+    /**
+     * Retrieve the current record at '(category, name)' in the default
+     * profile. A session is only opened if the record is not cached.
+     *
+     * @param category
+     * @param name
+     * @return the record, or {@code null} if not found.
+     * @throws AskarException
+     */
+    public EntryRecord fetch(String category, String name) throws AskarException {
+        return fetch(defaultProfile, category, name);
+    }
+
+    /**
+     * Retrieve the current record at '(category, name)'. A session is only
+     * opened if the record is not cached.
+     *
+     * @param profile
+     * @param category
+     * @param name
+     * @return the record, or {@code null} if not found.
+     * @throws AskarException
+     */
+    public EntryRecord fetch(String profile, String category, String name) throws AskarException {
+        String p = profile != null ? profile : defaultProfile;
+        CacheKey key = new CacheKey(p, category, name);
+        EntryRecord cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = generation(category).get();
+        EntryRecord record;
+        try (Session session = store.openSession(p, false)) {
+            record = load(session, category, name);
+        } catch (IOException ex) {
+            throw new AskarException(ex);
+        }
+        return put(key, record, generation);
+    }
+
+    /**
+     * Retrieve the current record at '(category, name)', reading it with the
+     * given session if it is not cached. Within a transaction the cache is
+     * bypassed.
+     *
+     * @param session
+     * @param category
+     * @param name
+     * @return the record, or {@code null} if not found.
+     * @throws AskarException
+     */
+    public EntryRecord fetch(Session session, String category, String name) throws AskarException {
+        AsyncSession async = session.async();
+        if (async.isTransaction()) {
+            return load(session, category, name);
+        }
+        String p = async.getProfile() != null ? async.getProfile() : defaultProfile;
+        CacheKey key = new CacheKey(p, category, name);
+        EntryRecord cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = generation(category).get();
+        return put(key, load(session, category, name), generation);
+    }
+
+    /**
+     * Drop every cached record.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     *
+     * @return the current metrics of the cache.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Stop tracking the writes to the store and drop every cached record. The
+     * store itself is left open.
+     */
+    @Override
+    public void close() {
+        store.removeWriteListener(invalidator);
+        cache.invalidateAll();
+        expiries.clear();
+    }
+
+    private EntryRecord load(Session session, String category, String name) throws AskarException {
+        try (Entry entry = session.fetch(category, name, false)) {
+            if (entry == null) {
+                return null;
+            }
+            return new EntryRecord(category, name, entry.getTags(), entry.getValue());
+        }
+    }
+
+    /**
+     * Caches a loaded record, unless its category was written since
+     * 'generation' was read, as the record may then be stale.
+     */
+    private EntryRecord put(CacheKey key, EntryRecord record, long generation) {
+        if (record == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long expiresAt = expireAfterWriteNanos > 0 ? now + expireAfterWriteNanos : BoundedCache.NO_EXPIRY;
+        Long expiry = expiries.get(key);
+        if (expiry != null) {
+            if (now - expiry >= 0) {
+                expiries.remove(key, expiry);
+                return record;
+            }
+            expiresAt = expiresAt == BoundedCache.NO_EXPIRY ? expiry : Math.min(expiresAt, expiry);
+        }
+        AtomicLong current = generation(key.category);
+        cache.put(key, record, record.weight(), expiresAt, () -> current.get() == generation);
+        return record;
+    }
+
+    private AtomicLong generation(String category) {
+        return generations.computeIfAbsent(category, c -> new AtomicLong());
+    }
+
+    /**
+     * Invalidates the records written through the store. The expiry of a
+     * record is noted before its category generation is moved on, so a load
+     * that starts after the write always sees it.
+     */
+    private final class Invalidator implements WriteListener {
+
+        @Override
+        public void entryWritten(String profile, EntryOperation operation, String category, String name, long expiryMs) {
+            CacheKey key = new CacheKey(profile != null ? profile : defaultProfile, category, name);
+            if (operation != EntryOperation.REMOVE && expiryMs > 0) {
+                if (expiries.size() >= MAX_EXPIRY_HINTS) {
+                    long now = System.nanoTime();
+                    expiries.values().removeIf(expiry -> now - expiry >= 0);
+                }
+                expiries.put(key, System.nanoTime() + expiryMs * 1_000_000L);
+            } else {
+                expiries.remove(key);
+            }
+            generation(category).incrementAndGet();
+            cache.invalidate(key);
+        }
+
+        @Override
+        public void entriesRemoved(String profile, String category, String tagFilter) {
+            generation(category).incrementAndGet();
+            cache.invalidateIf(key -> key.category.equals(category));
+        }
+    }
+
+    /**
+     * Cache key, with its hash computed once.
+     */
+    private static final class CacheKey {
+
+        final String profile;
+        final String category;
+        final String name;
+        final int hash;
+
+        CacheKey(String profile, String category, String name) {
+            this.profile = Objects.requireNonNull(profile);
+            this.category = Objects.requireNonNull(category);
+            this.name = Objects.requireNonNull(name);
+            this.hash = 31 * (31 * profile.hashCode() + category.hashCode()) + name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return hash == other.hash && name.equals(other.name)
+                    && category.equals(other.category) && profile.equals(other.profile);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import pt.cjmach.jaskar.lib.ErrorCode;
+
+/**
+ * Adaptive cap on the number of sessions of a store that are open at the same
+ * time, following an additive increase, multiplicative decrease rule. The
+ * limit is driven by the latency of session starts and of the single-record
+ * reads and writes done on the limited sessions, each compared with its own
+ * usual latency. It grows by about one for every 'limit' samples on time
+ * while the store is busy, and shrinks by 'backoffRatio' whenever a session
+ * fails to start, an operation is rejected as busy, or a sample takes more
+ * than 'tolerance' times the usual latency, which is the sign of a queue
+ * building up in the native connection pool. The limit shrinks at most once
+ * per round trip: samples already under way at the last decrease are not
+ * counted again, so a burst of slow samples backs off only once.
+ * <p>
+ * Callers over the limit wait in a queue of up to 'maxQueue' callers for at
+ * most 'maxWait', and are otherwise rejected right away with an
+ * {@link AskarException} whose error code is {@link ErrorCode#BUSY}. The
+ * non-blocking API never waits.
+ *
+ * @author cmachado
+ * @see Store#setConcurrencyLimiter(pt.cjmach.jaskar.ConcurrencyLimiter)
+ */
+public final class ConcurrencyLimiter {
+
+    /**
+     * Latencies below this are never treated as a sign of overload.
+     */
+    private static final long MIN_SIGNAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The kinds of latency sample, each with its own baseline.
+     */
+    enum Sample {
+        START, READ, WRITE
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private double limit;
+    private final long[] baselineNanos = new long[Sample.values().length];
+    private long lastDecreaseAt = System.nanoTime() - 1;
+    private int inFlight;
+    private int queued;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     *
+     * @param initialLimit
+     * @param minLimit
+     * @param maxLimit
+     * @param maxQueue the maximum number of callers waiting for a session, or
+     * 0 to reject as soon as the limit is reached.
+     * @param maxWait
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, Duration maxWait) {
+        this(initialLimit, minLimit, maxLimit, maxQueue, maxWait, 2.0, 0.9);
+    }
+
+    /**
+     *
+     * @param initialLimit
+     * @param minLimit
+     * @param maxLimit
+     * @param maxQueue the maximum number of callers waiting for a session, or
+     * 0 to reject as soon as the limit is reached.
+     * @param maxWait
+     * @param tolerance how many times the usual start latency a start may take
+     * before the limit is decreased.
+     * @param backoffRatio the factor applied to the limit on a decrease.
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, Duration maxWait, double tolerance, double backoffRatio) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max.");
+        }
+        if (tolerance <= 1 || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Tolerance must be above 1 and backoff ratio between 0 and 1.");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     *
+     * @return the current limit.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of sessions started or open under this limiter.
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of callers waiting for a session.
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of callers rejected.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Takes a permit if one is free, without waiting.
+     *
+     * @return
+     * @throws AskarException with {@link ErrorCode#BUSY} if the limit is
+     * reached.
+     */
+    Permit tryAcquire() throws AskarException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return new Permit();
+            }
+        } finally {
+            lock.unlock();
+        }
+        throw reject();
+    }
+
+    /**
+     * Takes a permit, waiting in the queue if there is room in it.
+     *
+     * @return
+     * @throws AskarException with {@link ErrorCode#BUSY} if the queue is full
+     * or the wait times out.
+     */
+    Permit acquire() throws AskarException {
+        return acquire(maxWaitNanos);
+    }
+
+    /**
+     * Takes a permit, waiting in the queue if there is room in it, for at most
+     * the shorter of 'timeoutNanos' and the 'maxWait' of the limiter.
+     *
+     * @param timeoutNanos
+     * @return
+     * @throws AskarException with {@link ErrorCode#BUSY} if the queue is full
+     * or the wait times out.
+     */
+    Permit acquire(long timeoutNanos) throws AskarException {
+        long wait = Math.min(maxWaitNanos, timeoutNanos);
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return new Permit();
+            }
+            if (queued < maxQueue && wait > 0) {
+                queued++;
+                try {
+                    long remaining = wait;
+                    while (inFlight >= (int) limit && remaining > 0) {
+                        remaining = available.awaitNanos(remaining);
+                    }
+                    if (inFlight < (int) limit) {
+                        inFlight++;
+                        return new Permit();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new AskarException(ex);
+                } finally {
+                    queued--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        throw reject();
+    }
+
+    private AskarException reject() {
+        rejected.increment();
+        return new AskarException(ErrorCode.BUSY, "Too many sessions in flight.");
+    }
+
+    /**
+     * Adjusts the limit from the outcome of a session start or operation.
+     *
+     * @param sample
+     * @param startedAt the {@link System#nanoTime()} the sample started at.
+     * @param failed whether the start failed or the operation was rejected
+     * as busy.
+     */
+    private void onSample(Sample sample, long startedAt, boolean failed) {
+        long latencyNanos = System.nanoTime() - startedAt;
+        lock.lock();
+        try {
+            double previous = limit;
+            boolean overloaded = failed;
+            if (!failed) {
+                // tracks the lowest recent latency, slowly drifting up so it follows lasting changes.
+                long baseline = baselineNanos[sample.ordinal()];
+                baseline = baseline == 0 ? latencyNanos : Math.min(latencyNanos, baseline + (baseline >> 6) + 1);
+                baselineNanos[sample.ordinal()] = baseline;
+                overloaded = latencyNanos > MIN_SIGNAL_NANOS && latencyNanos > tolerance * baseline;
+            }
+            if (overloaded) {
+                if (startedAt - lastDecreaseAt > 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseAt = System.nanoTime();
+                }
+            } else if (inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            if ((int) limit > (int) previous) {
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onRelease() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A slot held from the start of a session until it is closed.
+     */
+    final class Permit {
+
+        private final long acquiredAt = System.nanoTime();
+        private boolean released;
+
+        /**
+         * Reports how the session start went.
+         *
+         * @param failed
+         */
+        void started(boolean failed) {
+            onSample(Sample.START, acquiredAt, failed);
+        }
+
+        /**
+         * Reports how an operation of the session went. Failures other than
+         * {@link ErrorCode#BUSY} say nothing about the load and are ignored.
+         *
+         * @param sample
+         * @param startedAt
+         * @param error the failure, or {@code null}.
+         */
+        void completed(Sample sample, long startedAt, Throwable error) {
+            if (error == null) {
+                onSample(sample, startedAt, false);
+            } else if (Futures.unwrap(error).getErrorCode() == ErrorCode.BUSY) {
+                onSample(sample, startedAt, true);
+            }
+        }
+
+        /**
+         * Frees the slot, once.
+         */
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                onRelease();
+            }
+        }
+    }
+}
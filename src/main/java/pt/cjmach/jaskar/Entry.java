@@ -32,6 +32,7 @@ public class Entry implements Closeable {
 
     private Pointer handle;
     private final int position;
+    private final boolean owner;
 
     /**
      * 
@@ -39,8 +40,20 @@ public class Entry implements Closeable {
      * @param position 
      */
     Entry(Pointer handle, int position) {
+        this(handle, position, true);
+    }
+
+    /**
+     * 
+     * @param handle
+     * @param position
+     * @param owner {@code true} if closing this entry frees the native entry 
+     * list, {@code false} if it is a view over a list owned by someone else.
+     */
+    Entry(Pointer handle, int position, boolean owner) {
         this.handle = handle;
         this.position = position;
+        this.owner = owner;
     }
 
     /**
@@ -49,7 +62,9 @@ public class Entry implements Closeable {
     @Override
     public void close() {
         if (handle != Pointer.NULL) {
-            AskarLibrary.askar_entry_list_free(handle);
+            if (owner) {
+                AskarLibrary.askar_entry_list_free(handle);
+            }
             handle = Pointer.NULL;
         }
     }
@@ -122,6 +137,17 @@ public class Entry implements Closeable {
         return result;
     }
 
+    /**
+     * Gets the tags associated with the entry record, which are parsed when 
+     * first accessed.
+     * 
+     * @return
+     * @throws AskarException 
+     */
+    public Tags getTagSet() throws AskarException {
+        return Tags.parse(getTags());
+    }
+
     /**
      * Gets the value of the entry record.
      * 
@@ -134,4 +160,21 @@ public class Entry implements Closeable {
             return result;
         }
     }
+
+    /**
+     * Copies the value of the entry record into the remaining space of a
+     * buffer, advancing its position. A direct buffer is filled straight from
+     * native memory, without an intermediate array.
+     * 
+     * @param dst
+     * @return the number of bytes copied.
+     * @throws AskarException 
+     * @throws java.nio.BufferOverflowException if the buffer has not enough 
+     * space left for the value.
+     */
+    public int getValue(java.nio.ByteBuffer dst) throws AskarException {
+        try (SecretBuffer buffer = getRawValue()) {
+            return buffer.getBytes(dst);
+        }
+    }
 }
@@ -15,11 +15,17 @@
  */
 package pt.cjmach.jaskar;
 
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import pt.cjmach.jaskar.lib.AskarLibrary;
 import pt.cjmach.jaskar.lib.ErrorCode;
+import pt.cjmach.jaskar.lib.SecretBuffer;
 
 /**
  *
@@ -27,6 +33,14 @@ import pt.cjmach.jaskar.lib.ErrorCode;
  */
 public class EntryList implements Closeable {
 
+    /**
+     * Minimum number of rows decoded by each task of a parallel
+     * {@link #materialize(boolean, boolean)}.
+     */
+    public static final int PARALLEL_THRESHOLD = 256;
+
+    private static final ByteBuffer EMPTY_VALUE = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
     private Pointer handle;
     private final int size;
 
@@ -53,7 +67,7 @@ public class EntryList implements Closeable {
      * 
      */
     @Override
-    public void close() {
+    public synchronized void close() {
         if (handle != Pointer.NULL) {
             AskarLibrary.askar_entry_list_free(handle);
             handle = Pointer.NULL;
@@ -63,13 +77,15 @@ public class EntryList implements Closeable {
     /**
      * 
      * @param index
-     * @return 
+     * @return a view over the entry at the given position. The view is only 
+     * valid until this list is closed, and closing the view does not free the 
+     * list.
      */
     public Entry get(int index) {
         if (index < 0 || index >= size) {
             throw new IndexOutOfBoundsException(index);
         }
-        return new Entry(handle, index);
+        return new Entry(handle, index, false);
     }
 
     /**
@@ -92,6 +108,147 @@ public class EntryList implements Closeable {
         return entries;
     }
 
+    /**
+     * Copies every row, including values, into records that outlive this 
+     * list.
+     * 
+     * @return
+     * @throws AskarException 
+     */
+    public EntryRecord[] materialize() throws AskarException {
+        return materialize(true, false);
+    }
+
+    /**
+     * Copies every row into records that outlive this list. Rows are decoded 
+     * in a single loop that reuses its native out-parameters, and consecutive 
+     * rows of the same category share the category string.
+     * 
+     * @param withValues whether to copy the values, or only the category, 
+     * name and tags.
+     * @param parallel whether to split decoding across the common fork-join 
+     * pool, in chunks of at least {@link #PARALLEL_THRESHOLD} rows.
+     * @return
+     * @throws AskarException 
+     */
+    public synchronized EntryRecord[] materialize(boolean withValues, boolean parallel) throws AskarException {
+        if (handle == Pointer.NULL) {
+            throw new IllegalStateException("Cannot materialize a closed entry list.");
+        }
+        EntryRecord[] records = new EntryRecord[size];
+        if (!parallel || size < 2 * PARALLEL_THRESHOLD) {
+            decode(records, 0, size, withValues);
+            return records;
+        }
+        try {
+            ForkJoinPool.commonPool().invoke(new DecodeTask(records, 0, size, withValues));
+        } catch (UncheckedAskarException ex) {
+            throw ex.getCause();
+        }
+        return records;
+    }
+
+    /**
+     * Passes every row to a visitor, as views over native memory, until the 
+     * visitor returns {@code false}. The out-parameters and text views are 
+     * reused for all rows, and values are not copied.
+     * 
+     * @param visitor
+     * @return {@code true} if every row was visited, {@code false} if the 
+     * visitor stopped early.
+     * @throws AskarException 
+     */
+    public synchronized boolean visit(EntryVisitor visitor) throws AskarException {
+        if (handle == Pointer.NULL) {
+            throw new IllegalStateException("Cannot visit a closed entry list.");
+        }
+        PointerByReference category = new PointerByReference();
+        PointerByReference name = new PointerByReference();
+        PointerByReference tags = new PointerByReference();
+        SecretBuffer buffer = new SecretBuffer();
+        NativeText categoryText = new NativeText();
+        NativeText nameText = new NativeText();
+        NativeText tagsText = new NativeText();
+        for (int i = 0; i < size; i++) {
+            try {
+                if (AskarLibrary.askar_entry_list_get_category(handle, i, category) != ErrorCode.SUCCESS
+                        || AskarLibrary.askar_entry_list_get_name(handle, i, name) != ErrorCode.SUCCESS
+                        || AskarLibrary.askar_entry_list_get_tags(handle, i, tags) != ErrorCode.SUCCESS
+                        || AskarLibrary.askar_entry_list_get_value(handle, i, buffer) != ErrorCode.SUCCESS) {
+                    throw new AskarException();
+                }
+                ByteBuffer value = buffer.data == Pointer.NULL ? EMPTY_VALUE 
+                        : buffer.data.getByteBuffer(0, buffer.len).asReadOnlyBuffer();
+                boolean keepGoing = visitor.visit(categoryText.load(category.getValue()), 
+                        nameText.load(name.getValue()), tagsText.load(tags.getValue()), value);
+                if (!keepGoing) {
+                    return false;
+                }
+            } finally {
+                free(category);
+                free(name);
+                free(tags);
+                buffer.close();
+            }
+        }
+        return true;
+    }
+
+    private static void free(PointerByReference out) {
+        Pointer value = out.getValue();
+        if (value != Pointer.NULL) {
+            Native.free(Pointer.nativeValue(value));
+            out.setValue(Pointer.NULL);
+        }
+    }
+
+    /**
+     * Decodes rows 'from' (inclusive) to 'to' (exclusive) into 'records'.
+     * 
+     * @param records
+     * @param from
+     * @param to
+     * @param withValues
+     * @throws AskarException 
+     */
+    private void decode(EntryRecord[] records, int from, int to, boolean withValues) throws AskarException {
+        PointerByReference out = new PointerByReference();
+        SecretBuffer buffer = new SecretBuffer();
+        String previousCategory = null;
+        for (int i = from; i < to; i++) {
+            String category = getString(AskarLibrary.askar_entry_list_get_category(handle, i, out), out);
+            if (category.equals(previousCategory)) {
+                category = previousCategory;
+            }
+            previousCategory = category;
+            String name = getString(AskarLibrary.askar_entry_list_get_name(handle, i, out), out);
+            String tags = getString(AskarLibrary.askar_entry_list_get_tags(handle, i, out), out);
+            byte[] value = null;
+            if (withValues) {
+                if (AskarLibrary.askar_entry_list_get_value(handle, i, buffer) != ErrorCode.SUCCESS) {
+                    throw new AskarException();
+                }
+                value = buffer.data == Pointer.NULL ? new byte[0] : buffer.getBytes();
+                buffer.close();
+            }
+            records[i] = new EntryRecord(category, name, tags, value);
+        }
+    }
+
+    private static String getString(ErrorCode errorCode, PointerByReference out) throws AskarException {
+        if (errorCode != ErrorCode.SUCCESS) {
+            throw new AskarException();
+        }
+        Pointer value = out.getValue();
+        if (value == Pointer.NULL) {
+            return null;
+        }
+        String result = value.getString(0, AskarLibrary.DEFAULT_CHARSET.name());
+        Native.free(Pointer.nativeValue(value));
+        out.setValue(Pointer.NULL);
+        return result;
+    }
+
     /**
      * 
      * @param handle
@@ -107,4 +264,40 @@ public class EntryList implements Closeable {
         int count = out.getValue();
         return count;
     }
+
+    /**
+     * Decodes a range of rows, splitting it in half while both halves have at 
+     * least {@link #PARALLEL_THRESHOLD} rows.
+     */
+    private final class DecodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final EntryRecord[] records;
+        private final int from;
+        private final int to;
+        private final boolean withValues;
+
+        DecodeTask(EntryRecord[] records, int from, int to, boolean withValues) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+            this.withValues = withValues;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 * PARALLEL_THRESHOLD) {
+                try {
+                    decode(records, from, to, withValues);
+                } catch (AskarException ex) {
+                    throw new UncheckedAskarException(ex);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecodeTask(records, from, middle, withValues),
+                    new DecodeTask(records, middle, to, withValues));
+        }
+    }
 }
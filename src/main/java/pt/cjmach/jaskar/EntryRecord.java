@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable copy of a record in the store, which holds no native resources.
+ *
+ * @author cmachado
+ * @see EntryList#materialize()
+ */
+public final class EntryRecord {
+
+    private final String category;
+    private final String name;
+    private final String tags;
+    private final byte[] value;
+
+    /**
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value the value, which is not copied, or {@code null} if it was
+     * not loaded.
+     */
+    EntryRecord(String category, String name, String tags, byte[] value) {
+        this.category = category;
+        this.name = name;
+        this.tags = tags;
+        this.value = value;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getTags() {
+        return tags;
+    }
+
+    /**
+     *
+     * @return the tags, which are parsed when first accessed.
+     */
+    public Tags getTagSet() {
+        return Tags.parse(tags);
+    }
+
+    /**
+     *
+     * @return a copy of the value, or {@code null} if values were not loaded.
+     */
+    public byte[] getValue() {
+        return value == null ? null : value.clone();
+    }
+
+    /**
+     *
+     * @return a read-only view of the value, or {@code null} if values were
+     * not loaded.
+     */
+    public ByteBuffer getValueBuffer() {
+        return value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+    }
+
+    /**
+     *
+     * @return whether the value was loaded.
+     */
+    public boolean hasValue() {
+        return value != null;
+    }
+
+    /**
+     *
+     * @return the estimated number of bytes taken by this record.
+     */
+    long weight() {
+        long chars = category.length() + name.length() + (tags == null ? 0 : tags.length());
+        return 96 + 2 * chars + (value == null ? 0 : value.length);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EntryRecord)) {
+            return false;
+        }
+        EntryRecord other = (EntryRecord) obj;
+        return category.equals(other.category) && name.equals(other.name)
+                && Objects.equals(tags, other.tags) && Arrays.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * category.hashCode() + name.hashCode();
+    }
+
+    /**
+     *
+     * @return the category and name of the record. The value is left out, as
+     * it may be secret.
+     */
+    @Override
+    public String toString() {
+        return "EntryRecord{category=" + category + ", name=" + name + '}';
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the rows of a result one at a time, as views over native memory
+ * instead of copies. The arguments are reused from row to row and are only
+ * valid until {@link #visit} returns, so anything kept must be copied, for
+ * instance with {@link CharSequence#toString()}.
+ *
+ * @author cmachado
+ * @see EntryList#visit(pt.cjmach.jaskar.EntryVisitor)
+ */
+@FunctionalInterface
+public interface EntryVisitor {
+
+    /**
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value a read-only view over the value.
+     * @return {@code true} to keep visiting, {@code false} to stop.
+     */
+    boolean visit(CharSequence category, CharSequence name, CharSequence tags, ByteBuffer value);
+}
@@ -30,6 +30,8 @@ import pt.cjmach.jaskar.lib.ErrorCode;
  */
 final class ErrorMessage {
 
+    private static final ObjectMapper MAPPER = new JsonMapper();
+
     public int code;
     public String message;
 
@@ -47,9 +49,8 @@ final class ErrorMessage {
         String jsonMessage = p.getString(0, AskarLibrary.DEFAULT_CHARSET.name());
         Native.free(Pointer.nativeValue(p));
 
-        ObjectMapper mapper = new JsonMapper();
         try {
-            ErrorMessage errorMessage = mapper.readValue(jsonMessage, ErrorMessage.class);
+            ErrorMessage errorMessage = MAPPER.readValue(jsonMessage, ErrorMessage.class);
             return errorMessage;
         } catch (IOException ex) {
             return null;
@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate access counts, in a count-min sketch of 4-bit counters. Counts
+ * are halved once the number of increments reaches ten times the table
+ * capacity, so old popularity fades away.
+ * <p>
+ * The sketch is updated without locking. Counters are incremented with
+ * compare-and-set, so concurrent increments are never lost, and only the
+ * thread whose increment fills the sample halves the counters.
+ *
+ * @author cmachado
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     *
+     * @param expectedEntries
+     */
+    FrequencySketch(long expectedEntries) {
+        int size = Integer.highestOneBit((int) Math.min(Math.max(expectedEntries, 16), 1 << 24) - 1) << 1;
+        this.table = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     *
+     * @param hash
+     * @return the estimated number of recent accesses, up to 15.
+     */
+    int frequency(int hash) {
+        int result = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long slot = slot(hash, i);
+            int count = (int) ((table.get((int) slot) >>> (slot >>> 32)) & 0xf);
+            result = Math.min(result, count);
+        }
+        return result;
+    }
+
+    /**
+     * Records one access.
+     *
+     * @param hash
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long slot = slot(hash, i);
+            added |= increment((int) slot, (int) (slot >>> 32));
+        }
+        if (added && additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     *
+     * @param index
+     * @param shift
+     * @return whether the counter was below its maximum and was incremented.
+     */
+    private boolean increment(int index, int shift) {
+        long current;
+        do {
+            current = table.get(index);
+            if (((current >>> shift) & 0xf) >= MAX_COUNT) {
+                return false;
+            }
+        } while (!table.compareAndSet(index, current, current + (1L << shift)));
+        return true;
+    }
+
+    /**
+     * Halves every counter. Increments made meanwhile still count towards the
+     * next sample.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            table.getAndUpdate(i, value -> (value >>> 1) & RESET_MASK);
+        }
+        additions.addAndGet(-sampleSize / 2);
+    }
+
+    /**
+     *
+     * @param hash
+     * @param i
+     * @return the table index in the low half and the counter shift in the
+     * high half.
+     */
+    private long slot(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h ^= h >>> 32;
+        int index = (int) (h >>> 4) & mask;
+        long shift = (h & 0xf) << 2;
+        return (shift << 32) | index;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import pt.cjmach.jaskar.lib.AskarCallback;
+import pt.cjmach.jaskar.lib.ErrorCode;
+
+/**
+ * Helpers to bridge library callbacks and {@link CompletableFuture}s.
+ *
+ * @author cmachado
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Adapts the completion of an asynchronous library call into a future.
+     *
+     * @param <T>
+     * @param callback the callback passed to the library call.
+     * @param errorCode the error code returned by the library call.
+     * @return a future completed with the callback result, or completed
+     * exceptionally with an {@link AskarException} if either the call or the
+     * callback failed.
+     */
+    static <T> CompletableFuture<T> submit(AskarCallback<T> callback, ErrorCode errorCode) {
+        if (errorCode != ErrorCode.SUCCESS) {
+            callback.release();
+            return CompletableFuture.failedFuture(new AskarException());
+        }
+        // runs on the callback thread, right after the library has set the
+        // error details.
+        return callback.getFuture().thenApply(result -> {
+            if (callback.getErrorCode() != ErrorCode.SUCCESS) {
+                throw new CompletionException(new AskarException());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Adapts the completion of an asynchronous update into a future of its
+     * status. Expected conflicts complete the future normally, without
+     * fetching the error details from the library.
+     *
+     * @param callback the callback passed to the library call.
+     * @param errorCode the error code returned by the library call.
+     * @return a future completed with the update status, or completed
+     * exceptionally with an {@link AskarException} if either the call was
+     * rejected or the callback failed in an unexpected way.
+     */
+    static CompletableFuture<UpdateStatus> status(AskarCallback<?> callback, ErrorCode errorCode) {
+        if (errorCode != ErrorCode.SUCCESS) {
+            callback.release();
+            return CompletableFuture.failedFuture(new AskarException());
+        }
+        return callback.getFuture().thenApply(result -> {
+            UpdateStatus status = UpdateStatus.of(callback.getErrorCode());
+            if (status == null) {
+                throw new CompletionException(new AskarException());
+            }
+            return status;
+        });
+    }
+
+    /**
+     * Waits for the future to complete.
+     *
+     * @param <T>
+     * @param future
+     * @return
+     * @throws AskarException
+     */
+    static <T> T join(CompletableFuture<T> future) throws AskarException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            throw new AskarException(ex);
+        } catch (ExecutionException ex) {
+            throw unwrap(ex.getCause());
+        }
+    }
+
+    /**
+     * Waits for the future to complete, for at most 'timeout'. On timeout the
+     * waiting thread is released and the result, once it arrives, is closed
+     * if it holds native resources.
+     *
+     * @param <T>
+     * @param future
+     * @param timeout the maximum time to wait, or {@code null} to wait
+     * forever.
+     * @return
+     * @throws AskarException caused by a {@link TimeoutException} if the
+     * timeout passes.
+     */
+    static <T> T join(CompletableFuture<T> future, Duration timeout) throws AskarException {
+        if (timeout == null) {
+            return join(future);
+        }
+        try {
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            future.thenAccept(Futures::discard);
+            throw new AskarException(ex);
+        } catch (ExecutionException ex) {
+            throw unwrap(ex.getCause());
+        } catch (TimeoutException ex) {
+            future.thenAccept(Futures::discard);
+            throw new AskarException(new TimeoutException("Operation timed out after " + timeout + "."));
+        }
+    }
+
+    /**
+     * Frees a result nobody waits for anymore.
+     *
+     * @param result
+     */
+    static void discard(Object result) {
+        if (result instanceof AsyncSession) {
+            ((AsyncSession) result).close(false);
+        } else if (result instanceof AsyncStore) {
+            ((AsyncStore) result).close(false);
+        } else if (result instanceof Closeable) {
+            try {
+                ((Closeable) result).close();
+            } catch (IOException ex) {
+                // nothing left to do with it.
+            }
+        }
+    }
+
+    /**
+     *
+     * @param cause
+     * @return
+     */
+    static AskarException unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof AskarException) {
+            return (AskarException) cause;
+        }
+        return new AskarException(cause);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Value codecs backed by a Jackson {@link ObjectMapper}. The format follows
+ * the mapper, so binary formats such as Smile or CBOR are used by passing a
+ * {@code SmileMapper} or {@code CBORMapper} from the matching Jackson dataformat
+ * module. Codecs, with their {@link ObjectReader} and {@link ObjectWriter},
+ * are created once per type and shared.
+ *
+ * @author cmachado
+ */
+public final class JacksonCodecs {
+
+    private static final JacksonCodecs JSON = new JacksonCodecs(new JsonMapper());
+
+    private final ObjectMapper mapper;
+    private final ConcurrentHashMap<JavaType, ValueCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param mapper a configured mapper, which must not be changed afterwards.
+     */
+    public JacksonCodecs(ObjectMapper mapper) {
+        this.mapper = Objects.requireNonNull(mapper);
+    }
+
+    /**
+     *
+     * @return the shared codecs for JSON with the default configuration.
+     */
+    public static JacksonCodecs json() {
+        return JSON;
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param type
+     * @return
+     */
+    public <T> ValueCodec<T> forType(Class<T> type) {
+        return forType(mapper.constructType(type));
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param type
+     * @return
+     */
+    public <T> ValueCodec<T> forType(TypeReference<T> type) {
+        return forType(mapper.constructType(type));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ValueCodec<T> forType(JavaType type) {
+        return (ValueCodec<T>) codecs.computeIfAbsent(type, t -> new Codec<>(mapper.readerFor(t),
+                mapper.writerFor(t).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)));
+    }
+
+    /**
+     * Codec for a single type.
+     *
+     * @param <T>
+     */
+    private static final class Codec<T> implements ValueCodec<T> {
+
+        private final ObjectReader reader;
+        private final ObjectWriter writer;
+
+        Codec(ObjectReader reader, ObjectWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        @Override
+        public void encode(T value, OutputStream out) throws IOException {
+            writer.writeValue(out, value);
+        }
+
+        @Override
+        public T decode(InputStream in) throws IOException {
+            return reader.readValue(in);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import pt.cjmach.jaskar.lib.EntryOperation;
+
+/**
+ * In-memory copy of every record of a category, for data that is read often
+ * and written rarely. Reads are served from an immutable snapshot, indexed by
+ * name and by tag value, without locking nor calling the library.
+ * <p>
+ * A new snapshot replaces the current one whenever the category changes:
+ * records written through the store are fetched again shortly after the
+ * write takes effect, and the whole category is reloaded at a fixed interval
+ * to pick up writes done elsewhere. Snapshots are only built by a single
+ * background thread, which also runs the reloads requested with
+ * {@link #refresh()}, so a read right after a write may still see the previous
+ * snapshot.
+ *
+ * @author cmachado
+ * @see Store#materialize(java.lang.String, java.lang.String, java.time.Duration)
+ */
+public class MaterializedCategory implements Closeable {
+
+    /**
+     * Interval between full reloads used when none is given.
+     */
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+    private final Store store;
+    private final String profile;
+    private final String category;
+    private final ScheduledExecutorService executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean updateScheduled = new AtomicBoolean();
+    private final WriteListener listener = new Listener();
+    private volatile Snapshot snapshot;
+
+    /**
+     * Loads the category and starts tracking its changes.
+     *
+     * @param store
+     * @param profile
+     * @param category
+     * @param refreshInterval
+     * @throws AskarException
+     * @throws IllegalArgumentException if 'refreshInterval' is shorter than a
+     * millisecond.
+     */
+    MaterializedCategory(Store store, String profile, String category, Duration refreshInterval) throws AskarException {
+        long interval = refreshInterval.toMillis();
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Refresh interval must be at least one millisecond.");
+        }
+        this.store = store;
+        this.profile = profile;
+        this.category = category;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jaskar-materialize-" + category);
+            thread.setDaemon(true);
+            return thread;
+        });
+        // writes reported while loading are applied once the load is done.
+        store.addWriteListener(listener);
+        try {
+            refresh();
+        } catch (AskarException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        executor.scheduleWithFixedDelay(this::reloadQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     *
+     * @param name
+     * @return the record, or {@code null} if there is no such record.
+     */
+    public EntryRecord get(String name) {
+        return snapshot.byName.get(name);
+    }
+
+    /**
+     *
+     * @return every record of the category, in no particular order.
+     */
+    public Collection<EntryRecord> getAll() {
+        return snapshot.byName.values();
+    }
+
+    /**
+     *
+     * @param tagName
+     * @param value
+     * @return the records having the tag with the given value, looked up in
+     * the tag index.
+     */
+    public List<EntryRecord> findByTag(String tagName, String value) {
+        Map<String, List<EntryRecord>> values = snapshot.byTag.get(tagName);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return values.getOrDefault(value, Collections.emptyList());
+    }
+
+    /**
+     * Evaluate a tag filter over the records of the current snapshot.
+     *
+     * @param tagFilter
+     * @return the matching records.
+     * @see Wql#compile(java.lang.String)
+     */
+    public List<EntryRecord> find(String tagFilter) {
+        Predicate<Tags> predicate = Wql.compile(tagFilter);
+        Snapshot current = snapshot;
+        List<EntryRecord> result = new ArrayList<>();
+        for (Map.Entry<String, EntryRecord> record : current.byName.entrySet()) {
+            if (predicate.test(current.tags.get(record.getKey()))) {
+                result.add(record.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @return the number of records.
+     */
+    public int size() {
+        return snapshot.byName.size();
+    }
+
+    /**
+     * Reload the whole category now, waiting for the reload to be done by the
+     * background thread.
+     *
+     * @throws AskarException
+     * @throws IllegalStateException if this view was closed.
+     */
+    public void refresh() throws AskarException {
+        CompletableFuture<Void> reload;
+        try {
+            reload = CompletableFuture.runAsync(() -> {
+                try {
+                    reload();
+                } catch (AskarException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, executor);
+        } catch (RejectedExecutionException ex) {
+            throw new IllegalStateException("Cannot refresh a closed view.", ex);
+        }
+        Futures.join(reload, store.getTimeout());
+    }
+
+    /**
+     * Reloads the whole category. Only run by the background thread.
+     *
+     * @throws AskarException
+     */
+    private void reload() throws AskarException {
+        // writes reported from now on are applied again after the reload.
+        pending.clear();
+        Map<String, EntryRecord> records = new HashMap<>();
+        try (Scan scan = store.scanStart(profile, category, null, 0, -1, null, false)) {
+            while (true) {
+                try (EntryList batch = scan.nextList()) {
+                    if (batch == null) {
+                        break;
+                    }
+                    for (EntryRecord record : batch.materialize()) {
+                        records.put(record.getName(), record);
+                    }
+                }
+            }
+        }
+        snapshot = new Snapshot(records, snapshot);
+    }
+
+    /**
+     * Stop tracking the changes of the category.
+     */
+    @Override
+    public void close() {
+        store.removeWriteListener(listener);
+        executor.shutdownNow();
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (AskarException ex) {
+            // keeps the current snapshot until the next reload.
+        }
+    }
+
+    /**
+     * Fetches the records written since the last update and swaps in a
+     * snapshot with them.
+     */
+    private void update() {
+        updateScheduled.set(false);
+        Snapshot current = snapshot;
+        List<String> names = new ArrayList<>(pending);
+        if (current == null || names.isEmpty()) {
+            // before the first load, which applies the pending writes.
+            return;
+        }
+        pending.removeAll(names);
+        Map<String, EntryRecord> records = new HashMap<>(current.byName);
+        try (Session session = store.openSession(profile, false)) {
+            for (String name : names) {
+                try (Entry entry = session.fetch(category, name, false)) {
+                    if (entry == null) {
+                        records.remove(name);
+                    } else {
+                        records.put(name, new EntryRecord(category, name, entry.getTags(), entry.getValue()));
+                    }
+                }
+            }
+        } catch (AskarException | IOException ex) {
+            // the next reload picks the changes up.
+            return;
+        }
+        snapshot = new Snapshot(records, current);
+    }
+
+    private void schedule(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            // closed.
+        }
+    }
+
+    /**
+     * Queues the records written to the category for an update.
+     */
+    private final class Listener implements WriteListener {
+
+        @Override
+        public void entryWritten(String p, EntryOperation operation, String c, String name, long expiryMs) {
+            if (category.equals(c) && (p == null || p.equals(profile))) {
+                pending.add(name);
+                if (updateScheduled.compareAndSet(false, true)) {
+                    schedule(MaterializedCategory.this::update);
+                }
+            }
+        }
+
+        @Override
+        public void entriesRemoved(String p, String c, String tagFilter) {
+            if (category.equals(c) && (p == null || p.equals(profile))) {
+                schedule(MaterializedCategory.this::reloadQuietly);
+            }
+        }
+    }
+
+    /**
+     * Immutable view of the category, with its indexes. Tags are only parsed
+     * for records that are new or whose tags changed since the previous
+     * snapshot.
+     */
+    private static final class Snapshot {
+
+        final Map<String, EntryRecord> byName;
+        final Map<String, Tags> tags;
+        final Map<String, Map<String, List<EntryRecord>>> byTag;
+
+        Snapshot(Map<String, EntryRecord> records, Snapshot previous) {
+            Map<String, Tags> parsed = new HashMap<>();
+            Map<String, Map<String, List<EntryRecord>>> index = new HashMap<>();
+            for (EntryRecord record : records.values()) {
+                Tags recordTags = previous != null ? previous.tagsOf(record) : null;
+                if (recordTags == null) {
+                    recordTags = record.getTags() != null ? record.getTagSet() : Tags.empty();
+                }
+                parsed.put(record.getName(), recordTags);
+                for (Map.Entry<String, List<String>> tag : recordTags.asMap().entrySet()) {
+                    Map<String, List<EntryRecord>> values = index.computeIfAbsent(tag.getKey(), k -> new HashMap<>());
+                    for (String value : tag.getValue()) {
+                        values.computeIfAbsent(value, k -> new ArrayList<>()).add(record);
+                    }
+                }
+            }
+            for (Map<String, List<EntryRecord>> values : index.values()) {
+                values.replaceAll((value, list) -> Collections.unmodifiableList(list));
+            }
+            this.byName = Collections.unmodifiableMap(records);
+            this.tags = parsed;
+            this.byTag = index;
+        }
+
+        /**
+         *
+         * @param record
+         * @return the parsed tags of the same record in this snapshot, or
+         * {@code null} if it is not here or its tags are different.
+         */
+        Tags tagsOf(EntryRecord record) {
+            EntryRecord old = byName.get(record.getName());
+            if (old == null || !Objects.equals(old.getTags(), record.getTags())) {
+                return null;
+            }
+            return tags.get(record.getName());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.sun.jna.Pointer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import pt.cjmach.jaskar.lib.AskarLibrary;
+
+/**
+ * Reusable character sequence over a copy of a native UTF-8 string. The bytes
+ * are copied into an array that only grows, and ASCII text is read straight
+ * from it, so loading a string usually allocates nothing. Other text is
+ * decoded into a char array that is reused in the same way.
+ *
+ * @author cmachado
+ */
+final class NativeText implements CharSequence {
+
+    private final CharsetDecoder decoder = AskarLibrary.DEFAULT_CHARSET.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private byte[] bytes = new byte[64];
+    private char[] chars;
+    private int length;
+    private boolean ascii;
+
+    /**
+     * Loads the NUL terminated string at 'p'.
+     *
+     * @param p
+     * @return this sequence.
+     */
+    NativeText load(Pointer p) {
+        if (p == Pointer.NULL) {
+            length = 0;
+            ascii = true;
+            return this;
+        }
+        int size = (int) p.indexOf(0, (byte) 0);
+        if (bytes.length < size) {
+            bytes = new byte[Math.max(size, bytes.length * 2)];
+        }
+        p.read(0, bytes, 0, size);
+        ascii = true;
+        for (int i = 0; i < size; i++) {
+            if (bytes[i] < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            length = size;
+        } else {
+            decode(size);
+        }
+        return this;
+    }
+
+    private void decode(int size) {
+        if (chars == null || chars.length < size) {
+            chars = new char[Math.max(size, 64)];
+        }
+        CharBuffer out = CharBuffer.wrap(chars);
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(bytes, 0, size), out, true);
+        decoder.flush(out);
+        length = out.position();
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return ascii ? (char) bytes[index] : chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return ascii ? new String(bytes, 0, length, AskarLibrary.DEFAULT_CHARSET) : new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.Closeable;
+import java.util.Base64;
+import java.util.Objects;
+import pt.cjmach.jaskar.lib.AskarLibrary;
+
+/**
+ * Pages through the records of a category by key instead of by offset. Each
+ * page is fetched with a tag filter range on the last key seen, so the backend
+ * never re-reads the rows of previous pages.
+ * <p>
+ * The key is a plaintext tag (its name starts with '~'), since only those
+ * support range filters. The backend can only order records by insertion, and
+ * compares tag values as strings, so the key must be unique and its values
+ * must sort in insertion order, such as zero padded sequence numbers or
+ * ISO-8601 timestamps.
+ * <p>
+ * A pager holds no native resources and can be shared between threads. The
+ * position between pages is kept in an opaque continuation token, which can be
+ * handed out to clients and given back to {@link #fetch(java.lang.String)}.
+ *
+ * @author cmachado
+ */
+public class Pager {
+
+    private static final String ORDER_BY = "id";
+    private static final ObjectMapper MAPPER = new JsonMapper();
+
+    private final Store store;
+    private final String profile;
+    private final String category;
+    private final JsonNode tagFilter;
+    private final String keyTag;
+    private final int pageSize;
+    private final boolean descending;
+
+    /**
+     *
+     * @param store
+     * @param profile
+     * @param category
+     * @param tagFilter
+     * @param keyTag
+     * @param pageSize
+     * @param descending
+     */
+    Pager(Store store, String profile, String category, String tagFilter, String keyTag, int pageSize, boolean descending) {
+        this.store = store;
+        this.profile = profile;
+        this.category = Objects.requireNonNull(category);
+        this.keyTag = Objects.requireNonNull(keyTag);
+        if (!keyTag.startsWith("~")) {
+            throw new IllegalArgumentException("Key tag must be a plaintext tag: " + keyTag);
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        this.pageSize = pageSize;
+        this.descending = descending;
+        try {
+            this.tagFilter = tagFilter == null || tagFilter.isBlank() ? null : MAPPER.readTree(tagFilter);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Invalid tag filter: " + tagFilter, ex);
+        }
+    }
+
+    /**
+     * Fetches the first page.
+     *
+     * @return
+     * @throws AskarException
+     */
+    public Page first() throws AskarException {
+        return fetch(null);
+    }
+
+    /**
+     * Fetches the page after the given continuation token.
+     *
+     * @param continuationToken a token returned by a previous page, or
+     * {@code null} for the first page.
+     * @return
+     * @throws AskarException
+     * @throws IllegalArgumentException if the token is malformed.
+     */
+    public Page fetch(String continuationToken) throws AskarException {
+        String filter = buildFilter(continuationToken == null ? null : decodeToken(continuationToken));
+        EntryList entries;
+        Session session = store.openSession(profile, false);
+        try {
+            entries = session.fetchAll(category, filter, pageSize, ORDER_BY, descending, false);
+        } finally {
+            session.close(false);
+        }
+        String nextToken = null;
+        if (entries != null && entries.size() >= pageSize) {
+            try {
+                nextToken = encodeToken(keyOf(entries.get(entries.size() - 1)));
+            } catch (AskarException ex) {
+                entries.close();
+                throw ex;
+            }
+        }
+        return new Page(entries, nextToken);
+    }
+
+    /**
+     * Builds the tag filter of a page.
+     *
+     * @param lastKey the key of the last record of the previous page, or
+     * {@code null} for the first page.
+     * @return
+     */
+    String buildFilter(String lastKey) {
+        if (lastKey == null) {
+            return tagFilter == null ? "{}" : tagFilter.toString();
+        }
+        ObjectNode range = MAPPER.createObjectNode();
+        range.putObject(keyTag).put(descending ? "$lt" : "$gt", lastKey);
+        if (tagFilter == null) {
+            return range.toString();
+        }
+        ObjectNode and = MAPPER.createObjectNode();
+        ArrayNode terms = and.putArray("$and");
+        terms.add(tagFilter);
+        terms.add(range);
+        return and.toString();
+    }
+
+    private String keyOf(Entry entry) throws AskarException {
+        JsonNode value;
+        try {
+            value = MAPPER.readTree(entry.getTags()).get(keyTag);
+        } catch (JsonProcessingException ex) {
+            throw new AskarException(ex);
+        }
+        if (value == null || !value.isTextual()) {
+            throw new AskarException(new IllegalStateException("Record has no single value key tag " + keyTag));
+        }
+        return value.asText();
+    }
+
+    private static String encodeToken(String key) {
+        byte[] bytes = key.getBytes(AskarLibrary.DEFAULT_CHARSET);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String decodeToken(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        return new String(bytes, AskarLibrary.DEFAULT_CHARSET);
+    }
+
+    /**
+     * A page of records.
+     */
+    public static final class Page implements Closeable {
+
+        private final EntryList entries;
+        private final String continuationToken;
+
+        Page(EntryList entries, String continuationToken) {
+            this.entries = entries;
+            this.continuationToken = continuationToken;
+        }
+
+        /**
+         * Frees the records of this page.
+         */
+        @Override
+        public void close() {
+            if (entries != null) {
+                entries.close();
+            }
+        }
+
+        /**
+         *
+         * @return the records of this page, which are only valid until the
+         * page is closed, or {@code null} if the page is empty.
+         */
+        public EntryList getEntries() {
+            return entries;
+        }
+
+        /**
+         *
+         * @return the token of the next page, or {@code null} if this is the
+         * last page.
+         */
+        public String getContinuationToken() {
+            return continuationToken;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public boolean hasNext() {
+            return continuationToken != null;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public int size() {
+            return entries == null ? 0 : entries.size();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Scans a range of rows as several partitions, each with its own native scan
+ * and backend connection, fetched at the same time. The range is split by
+ * 'offset' and 'limit', so the scan order must be deterministic, typically by
+ * passing an 'orderBy', and rows written while scanning may be missed or seen
+ * twice.
+ * <p>
+ * When ordered, the rows of each partition are returned after those of the
+ * previous one, preserving the scan order, and every partition keeps fetching
+ * until it holds {@value #PREFETCH} batches that were not consumed yet.
+ * Otherwise batches are returned in the order they arrive and every partition
+ * keeps at most one batch fetched ahead of the one being consumed.
+ * <p>
+ * The entries returned by {@link #next()} are views over the current batch and
+ * are only valid until the scan moves past that batch or is closed.
+ *
+ * @author cmachado
+ */
+public class ParallelScan implements Iterator<Entry>, Closeable {
+
+    /**
+     * Maximum number of batches fetched ahead by each partition of an ordered
+     * scan.
+     */
+    public static final int PREFETCH = 4;
+
+    private final Partition[] partitions;
+    private final boolean ordered;
+    private final Duration timeout;
+    private final LinkedBlockingQueue<Arrival> arrivals = new LinkedBlockingQueue<>();
+    private int remaining;
+    private int partitionIndex;
+    private EntryList current;
+    private int position;
+    private volatile boolean closed;
+
+    /**
+     *
+     * @param store
+     * @param profile
+     * @param category
+     * @param tagFilter
+     * @param offset the first row of the range.
+     * @param count the number of rows in the range.
+     * @param orderBy
+     * @param descending
+     * @param partitionCount
+     * @param ordered
+     * @param timeout the maximum time to wait for each batch, or
+     * {@code null} to wait forever.
+     */
+    ParallelScan(AsyncStore store, String profile, String category, String tagFilter, long offset, long count,
+            String orderBy, boolean descending, int partitionCount, boolean ordered, Duration timeout) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("Partition count must be positive.");
+        }
+        long size = Math.max(1, (count + partitionCount - 1) / partitionCount);
+        int n = (int) Math.min(partitionCount, (count + size - 1) / size);
+        this.partitions = new Partition[n];
+        this.ordered = ordered;
+        this.timeout = timeout;
+        this.remaining = n;
+        for (int i = 0; i < n; i++) {
+            long from = offset + i * size;
+            long limit = Math.min(size, offset + count - from);
+            partitions[i] = new Partition(store.scanStart(profile, category, tagFilter, from, limit, orderBy, descending));
+        }
+        for (Partition partition : partitions) {
+            partition.request();
+        }
+    }
+
+    /**
+     *
+     * @return the number of partitions scanned.
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     *
+     * @return the maximum time to wait for each batch, or {@code null} if
+     * there is none.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Stops fetching, frees the current and fetched batches and closes every
+     * partition scan once no request is in flight.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+        for (Partition partition : partitions) {
+            partition.close();
+        }
+        discardArrivals();
+    }
+
+    /**
+     *
+     * @return
+     * @throws UncheckedAskarException if fetching the next batch fails.
+     */
+    @Override
+    public boolean hasNext() {
+        while (current == null || position >= current.size()) {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+            if (closed) {
+                return false;
+            }
+            current = ordered ? takeOrdered() : takeUnordered();
+            position = 0;
+            if (current == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return
+     * @throws UncheckedAskarException if fetching the next batch fails.
+     */
+    @Override
+    public Entry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.get(position++);
+    }
+
+    private EntryList takeOrdered() {
+        while (partitionIndex < partitions.length) {
+            Partition partition = partitions[partitionIndex];
+            Arrival arrival = poll(partition.buffered);
+            if (arrival.error != null) {
+                close();
+                throw new UncheckedAskarException(arrival.error);
+            }
+            if (arrival.batch != null) {
+                partition.request();
+                return arrival.batch;
+            }
+            partition.close();
+            partitionIndex++;
+        }
+        return null;
+    }
+
+    private EntryList takeUnordered() {
+        while (remaining > 0) {
+            Arrival arrival = poll(arrivals);
+            if (arrival.error != null) {
+                close();
+                throw new UncheckedAskarException(arrival.error);
+            }
+            if (arrival.batch != null) {
+                arrival.partition.request();
+                return arrival.batch;
+            }
+            arrival.partition.close();
+            remaining--;
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the next arrival of a queue, up to the scan timeout.
+     *
+     * @param queue
+     * @return
+     * @throws UncheckedAskarException if interrupted or timed out.
+     */
+    private Arrival poll(LinkedBlockingQueue<Arrival> queue) {
+        try {
+            Arrival arrival = timeout == null ? queue.take() : queue.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            if (arrival == null) {
+                throw new TimeoutException("Operation timed out after " + timeout + ".");
+            }
+            return arrival;
+        } catch (InterruptedException | TimeoutException ex) {
+            close();
+            throw new UncheckedAskarException(new AskarException(ex));
+        }
+    }
+
+    private void discardArrivals() {
+        Arrival arrival;
+        while ((arrival = arrivals.poll()) != null) {
+            if (arrival.batch != null) {
+                arrival.batch.close();
+            }
+        }
+    }
+
+    /**
+     * One offset range of the scan. Unordered partitions fetch one batch at a
+     * time and hand it to the shared arrival queue; ordered partitions keep
+     * fetching into their own queue until it is full or the range ends.
+     */
+    private final class Partition {
+
+        private final CompletableFuture<Scan> scan;
+        private final LinkedBlockingQueue<Arrival> buffered = new LinkedBlockingQueue<>();
+        private CompletableFuture<EntryList> next;
+        private boolean fetching;
+        private boolean ended;
+        private boolean done;
+
+        Partition(CompletableFuture<Scan> scan) {
+            this.scan = scan;
+        }
+
+        /**
+         * Requests the next batch of this partition, unless a request is in
+         * flight or, when ordered, the queue is full.
+         */
+        synchronized void request() {
+            if (done || ended || fetching || (ordered && buffered.size() >= PREFETCH)) {
+                return;
+            }
+            fetching = true;
+            CompletableFuture<EntryList> batch = scan.thenCompose(Scan::nextListAsync);
+            next = batch;
+            batch.whenComplete(this::arrived);
+        }
+
+        private void arrived(EntryList list, Throwable ex) {
+            if (!ordered) {
+                synchronized (this) {
+                    fetching = false;
+                }
+                if (closed) {
+                    if (list != null) {
+                        list.close();
+                    }
+                    return;
+                }
+                arrivals.add(new Arrival(this, list, ex != null ? Futures.unwrap(ex) : null));
+                if (closed) {
+                    // closed while queueing.
+                    discardArrivals();
+                }
+                return;
+            }
+            synchronized (this) {
+                fetching = false;
+                if (done) {
+                    if (list != null) {
+                        list.close();
+                    }
+                    return;
+                }
+                buffered.add(new Arrival(this, list, ex != null ? Futures.unwrap(ex) : null));
+                if (list == null) {
+                    ended = true;
+                }
+            }
+            request();
+        }
+
+        /**
+         * Frees the fetched batches and closes the scan once no request is in
+         * flight.
+         */
+        synchronized void close() {
+            if (done) {
+                return;
+            }
+            done = true;
+            Arrival arrival;
+            while ((arrival = buffered.poll()) != null) {
+                if (arrival.batch != null) {
+                    arrival.batch.close();
+                }
+            }
+            // a batch still in flight is freed by the arrival callback.
+            CompletableFuture<?> pending = next != null ? next : scan;
+            pending.whenComplete((result, ex) -> scan.thenAccept(Scan::close));
+        }
+    }
+
+    /**
+     * A batch, or the end or failure of a partition, in arrival order.
+     */
+    private static final class Arrival {
+
+        final Partition partition;
+        final EntryList batch;
+        final AskarException error;
+
+        Arrival(Partition partition, EntryList batch, AskarException error) {
+            this.partition = partition;
+            this.batch = batch;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checkout of a session from a {@link SessionPool}. Every checkout gets its
+ * own instance. Closing it, or any view made with
+ * {@link #withTimeout(java.time.Duration)}, returns the native session to the
+ * pool and invalidates the checkout: its operations then fail with an
+ * {@link IllegalStateException}, even once the native session is handed out
+ * again.
+ *
+ * @author cmachado
+ */
+public class PooledSession extends Session {
+
+    private final SessionPool pool;
+    private final SessionPool.Slot slot;
+    private final AtomicBoolean returned = new AtomicBoolean();
+
+    /**
+     *
+     * @param pool
+     * @param slot
+     */
+    PooledSession(SessionPool pool, SessionPool.Slot slot) {
+        super(slot.async);
+        this.pool = pool;
+        this.slot = slot;
+    }
+
+    /**
+     * Gets the non-blocking view of this session.
+     *
+     * @return
+     * @throws IllegalStateException if the session was returned to its pool.
+     */
+    @Override
+    public AsyncSession async() {
+        checkBorrowed();
+        return super.async();
+    }
+
+    /**
+     * Return the session to its pool.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        giveBack();
+    }
+
+    /**
+     * Return the session to its pool. Pooled sessions are not transactions,
+     * so there is nothing to commit.
+     *
+     * @param commit
+     * @throws AskarException
+     */
+    @Override
+    public void close(boolean commit) throws AskarException {
+        giveBack();
+    }
+
+    /**
+     * Get a view of this session with another timeout. Closing the view
+     * returns this session to its pool.
+     *
+     * @param timeout the timeout, or {@code null} to use the store default.
+     * @return
+     * @throws IllegalStateException if the session was returned to its pool.
+     */
+    @Override
+    public Session withTimeout(Duration timeout) {
+        return new TimedView(async(), timeout);
+    }
+
+    /**
+     * Mark the session as unusable, for instance after a backend error, so it
+     * is closed instead of returned to the pool.
+     *
+     * @throws IllegalStateException if the session was returned to its pool.
+     */
+    public void invalidate() {
+        checkBorrowed();
+        slot.invalid = true;
+    }
+
+    private void checkBorrowed() {
+        if (returned.get()) {
+            throw new IllegalStateException("Session was returned to its pool.");
+        }
+    }
+
+    private void giveBack() {
+        if (returned.compareAndSet(false, true)) {
+            pool.release(slot);
+        }
+    }
+
+    /**
+     * View of a pooled session with its own timeout, which hands the session
+     * back to the pool when closed.
+     */
+    private final class TimedView extends Session {
+
+        TimedView(AsyncSession async, Duration timeout) {
+            super(async, timeout);
+        }
+
+        @Override
+        public AsyncSession async() {
+            return PooledSession.this.async();
+        }
+
+        @Override
+        public Session withTimeout(Duration timeout) {
+            return PooledSession.this.withTimeout(timeout);
+        }
+
+        @Override
+        public void close() throws IOException {
+            PooledSession.this.close();
+        }
+
+        @Override
+        public void close(boolean commit) throws AskarException {
+            PooledSession.this.close(commit);
+        }
+    }
+}
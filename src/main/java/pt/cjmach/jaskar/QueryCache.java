@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import pt.cjmach.jaskar.lib.EntryOperation;
+
+/**
+ * Cache of the results of {@code count} and {@code fetchAll} queries, keyed
+ * by profile, category, tag filter, order and limit.
+ * <p>
+ * Each category has a generation number, which moves on with every write to
+ * the category through any session of the store, and each result keeps the
+ * generation it was read at. A result from an older generation is discarded
+ * when it is next looked up, so a write invalidates every query on its
+ * category without tracking which queries it affects. Writes done by other
+ * processes, or through another store instance, are only seen once a result
+ * reaches the 'expireAfterWrite' age.
+ * <p>
+ * Queries within a transaction are never cached, as they may see uncommitted
+ * writes.
+ *
+ * @author cmachado
+ */
+public class QueryCache implements Closeable {
+
+    private static final long QUERY_OVERHEAD = 128;
+    private static final long AVERAGE_WEIGHT = 4096;
+
+    private final Store store;
+    private final String defaultProfile;
+    private final long expireAfterWriteNanos;
+    private final BoundedCache<QueryKey, Result> cache;
+    private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final WriteListener invalidator = new Invalidator();
+
+    /**
+     *
+     * @param store
+     * @param maximumWeight the maximum estimated number of bytes of the cached
+     * results.
+     * @param expireAfterWrite the maximum age of a cached result, or
+     * {@code null} to keep results until their category is written to or they
+     * are evicted.
+     * @throws AskarException
+     */
+    public QueryCache(Store store, long maximumWeight, Duration expireAfterWrite) throws AskarException {
+        this.store = Objects.requireNonNull(store);
+        this.defaultProfile = store.getDefaultProfile();
+        this.expireAfterWriteNanos = expireAfterWrite == null ? 0 : expireAfterWrite.toNanos();
+        this.cache = new BoundedCache<>(maximumWeight, AVERAGE_WEIGHT);
+        store.addWriteListener(invalidator);
+    }
+
+    /**
+     *
+     * @return the cached store.
+     */
+    public Store getStore() {
+        return store;
+    }
+
+    /**
+     * Count the number of entries for a given record category, running the
+     * query with the given session if the result is not cached.
+     *
+     * @param session
+     * @param category
+     * @param tagFilter
+     * @return
+     * @throws AskarException
+     * @see Session#count(java.lang.String, java.lang.String)
+     */
+    public long count(Session session, String category, String tagFilter) throws AskarException {
+        Objects.requireNonNull(category);
+        if (session.async().isTransaction()) {
+            return session.count(category, tagFilter);
+        }
+        QueryKey key = new QueryKey(profile(session), category, tagFilter, null, false, -1, true);
+        AtomicLong generation = generation(category);
+        Result cached = cache.get(key, result -> result.generation == generation.get());
+        if (cached != null) {
+            return (Long) cached.value;
+        }
+        long current = generation.get();
+        long count = session.count(category, tagFilter);
+        put(key, new Result(current, count), QUERY_OVERHEAD);
+        return count;
+    }
+
+    /**
+     * Retrieve all records matching the given 'category' and 'tagFilter',
+     * running the query with the given session if the result is not cached.
+     *
+     * @param session
+     * @param category
+     * @param tagFilter
+     * @param limit
+     * @param orderBy
+     * @param descending
+     * @return an unmodifiable list of the records, shared with the cache.
+     * @throws AskarException
+     * @see Session#fetchAll(java.lang.String, java.lang.String, long, java.lang.String, boolean, boolean)
+     */
+    @SuppressWarnings("unchecked")
+    public List<EntryRecord> fetchAll(Session session, String category, String tagFilter, long limit, String orderBy, boolean descending) throws AskarException {
+        Objects.requireNonNull(category);
+        if (session.async().isTransaction()) {
+            return load(session, category, tagFilter, limit, orderBy, descending);
+        }
+        QueryKey key = new QueryKey(profile(session), category, tagFilter, orderBy, descending, limit, false);
+        AtomicLong generation = generation(category);
+        Result cached = cache.get(key, result -> result.generation == generation.get());
+        if (cached != null) {
+            return (List<EntryRecord>) cached.value;
+        }
+        long current = generation.get();
+        List<EntryRecord> records = load(session, category, tagFilter, limit, orderBy, descending);
+        long weight = QUERY_OVERHEAD;
+        for (EntryRecord record : records) {
+            weight += record.weight();
+        }
+        put(key, new Result(current, records), weight);
+        return records;
+    }
+
+    /**
+     * Drop every cached result.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     *
+     * @return the current metrics of the cache.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Stop tracking the writes to the store and drop every cached result. The
+     * store itself is left open.
+     */
+    @Override
+    public void close() {
+        store.removeWriteListener(invalidator);
+        cache.invalidateAll();
+    }
+
+    private List<EntryRecord> load(Session session, String category, String tagFilter, long limit, String orderBy, boolean descending) throws AskarException {
+        try (EntryList entries = session.fetchAll(category, tagFilter, limit, orderBy, descending, false)) {
+            if (entries == null) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList(Arrays.asList(entries.materialize()));
+        }
+    }
+
+    private void put(QueryKey key, Result result, long weight) {
+        long expiresAt = expireAfterWriteNanos > 0 ? System.nanoTime() + expireAfterWriteNanos : BoundedCache.NO_EXPIRY;
+        cache.put(key, result, weight + 2 * key.length(), expiresAt, null);
+    }
+
+    private String profile(Session session) {
+        String profile = session.async().getProfile();
+        return profile != null ? profile : defaultProfile;
+    }
+
+    private AtomicLong generation(String category) {
+        return generations.computeIfAbsent(category, c -> new AtomicLong());
+    }
+
+    /**
+     * Moves the generation of the written categories on.
+     */
+    private final class Invalidator implements WriteListener {
+
+        @Override
+        public void entryWritten(String profile, EntryOperation operation, String category, String name, long expiryMs) {
+            generation(category).incrementAndGet();
+        }
+
+        @Override
+        public void entriesRemoved(String profile, String category, String tagFilter) {
+            generation(category).incrementAndGet();
+        }
+    }
+
+    /**
+     * Query result, with the category generation it was read at.
+     */
+    private static final class Result {
+
+        final long generation;
+        final Object value;
+
+        Result(long generation, Object value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Cache key, with its hash computed once.
+     */
+    private static final class QueryKey {
+
+        final String profile;
+        final String category;
+        final String tagFilter;
+        final String orderBy;
+        final boolean descending;
+        final long limit;
+        final boolean count;
+        final int hash;
+
+        QueryKey(String profile, String category, String tagFilter, String orderBy, boolean descending, long limit, boolean count) {
+            this.profile = profile;
+            this.category = category;
+            this.tagFilter = tagFilter;
+            this.orderBy = orderBy;
+            this.descending = descending;
+            this.limit = limit;
+            this.count = count;
+            this.hash = Objects.hash(profile, category, tagFilter, orderBy, descending, limit, count);
+        }
+
+        long length() {
+            return category.length() + (tagFilter == null ? 0 : tagFilter.length());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) obj;
+            return hash == other.hash && count == other.count && limit == other.limit
+                    && descending == other.descending && category.equals(other.category)
+                    && Objects.equals(tagFilter, other.tagFilter) && Objects.equals(orderBy, other.orderBy)
+                    && Objects.equals(profile, other.profile);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
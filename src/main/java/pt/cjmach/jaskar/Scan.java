@@ -17,6 +17,10 @@ package pt.cjmach.jaskar;
 
 import com.sun.jna.Pointer;
 import java.io.Closeable;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import pt.cjmach.jaskar.lib.AskarCallback;
 import pt.cjmach.jaskar.lib.AskarLibrary;
 import pt.cjmach.jaskar.lib.ErrorCode;
@@ -27,8 +31,15 @@ import pt.cjmach.jaskar.lib.SizeT;
  * 
  * @author cmachado
  */
-public class Scan implements Closeable {
-    private SizeT handle;
+public class Scan implements Closeable, Iterable<Entry> {
+
+    /**
+     * Default number of result batches requested ahead of the one being consumed.
+     */
+    public static final int DEFAULT_PREFETCH = 1;
+
+    private volatile SizeT handle;
+    private volatile Duration timeout;
     
     /**
      * 
@@ -43,34 +54,156 @@ public class Scan implements Closeable {
      */
     @Override
     public void close() {
-        if (handle != null) {
-            AskarLibrary.askar_scan_free(handle);
+        SizeT h = handle;
+        if (h != null) {
             handle = null;
+            AskarLibrary.askar_scan_free(h);
         }
     }
+
+    /**
+     * Set the maximum time the blocking operations of this scan wait for a
+     * result batch. When one times out it fails with an 
+     * {@link AskarException} caused by a 
+     * {@link java.util.concurrent.TimeoutException}, and the batch is freed
+     * whenever it arrives. The scan should then be closed.
+     * 
+     * @param timeout the timeout, or {@code null} to wait forever.
+     * @return this scan.
+     */
+    public Scan setTimeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * 
+     * @return the timeout of the blocking operations, or {@code null} if they
+     * wait forever.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Iterate every row of the scan, prefetching {@link #DEFAULT_PREFETCH} 
+     * result batches ahead.
+     * 
+     * @return
+     * @see #cursor(int)
+     */
+    @Override
+    public ScanCursor iterator() {
+        return cursor(DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Iterate every row of the scan. While the rows of one batch are consumed,
+     * up to 'prefetch' further batches are fetched in the background.
+     * 
+     * @param prefetch the number of batches to request ahead, must be positive.
+     * @return a cursor that closes this scan when closed.
+     */
+    public ScanCursor cursor(int prefetch) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("Prefetch must be positive.");
+        }
+        Objects.requireNonNull(handle, "Cannot fetch from a closed scan.");
+        return new ScanCursor(this, prefetch);
+    }
     
     /**
-     * Fetch the next set of result rows.
+     * Pass every remaining row of the scan to a visitor, without copying them 
+     * into Java objects. The next result batch is fetched while the current 
+     * one is visited.
+     * 
+     * @param visitor
+     * @return {@code true} if every row was visited, {@code false} if the 
+     * visitor stopped early.
+     * @throws AskarException 
+     * @see EntryList#visit(pt.cjmach.jaskar.EntryVisitor)
+     */
+    public boolean visit(EntryVisitor visitor) throws AskarException {
+        Objects.requireNonNull(visitor);
+        CompletableFuture<EntryList> next = nextListAsync();
+        try {
+            while (true) {
+                EntryList batch = Futures.join(next, timeout);
+                if (batch == null) {
+                    return true;
+                }
+                try (batch) {
+                    next = nextListAsync();
+                    if (!batch.visit(visitor)) {
+                        return false;
+                    }
+                }
+            }
+        } finally {
+            // frees a batch still being fetched when stopping early.
+            next.thenAccept(pending -> {
+                if (pending != null) {
+                    pending.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Fetch the next set of result rows. Only the first row of the set is 
+     * accessible through the result, use {@link #nextList()} to access them all.
      * 
      * @return
      * @throws AskarException 
      */
     public Entry next() throws AskarException {
-        AskarCallback.Pointer callback = new AskarCallback.Pointer();
-        ErrorCode errorCode = AskarLibrary.askar_scan_next(handle, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            Pointer p = callback.getPointer();
+        return Futures.join(nextAsync(), timeout);
+    }
+
+    /**
+     * Fetch the next set of result rows without blocking.
+     * 
+     * @return a future completed with the next rows, or {@code null} when the 
+     * scan is exhausted.
+     */
+    public CompletableFuture<Entry> nextAsync() {
+        return fetchNext().thenApply(p -> p == Pointer.NULL ? null : new Entry(p, 0));
+    }
+
+    /**
+     * Fetch the next set of result rows.
+     * 
+     * @return the next rows, or {@code null} when the scan is exhausted.
+     * @throws AskarException 
+     */
+    public EntryList nextList() throws AskarException {
+        return Futures.join(nextListAsync(), timeout);
+    }
+
+    /**
+     * Fetch the next set of result rows without blocking.
+     * 
+     * @return a future completed with the next rows, or {@code null} when the 
+     * scan is exhausted.
+     */
+    public CompletableFuture<EntryList> nextListAsync() {
+        return fetchNext().thenApply(p -> {
             if (p == Pointer.NULL) {
                 return null;
             }
-            Entry entry = new Entry(p, 0);
-            return entry;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+            try {
+                return new EntryList(p);
+            } catch (AskarException ex) {
+                AskarLibrary.askar_entry_list_free(p);
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    private CompletableFuture<Pointer> fetchNext() {
+        SizeT h = Objects.requireNonNull(handle, "Cannot fetch from a closed scan.");
+        AskarCallback.Pointer callback = new AskarCallback.Pointer();
+        ErrorCode errorCode = AskarLibrary.askar_scan_next(h, AskarCallback.POINTER, callback.getId());
+        return Futures.submit(callback, errorCode);
     }
 }
@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Iterates every row of a {@link Scan}, fetching the following result batches
+ * in the background while the current one is consumed. Batches are requested
+ * one after the other, so rows are returned in scan order.
+ * <p>
+ * The entries returned by {@link #next()} are views over the current batch and
+ * are only valid until the cursor moves past that batch or is closed.
+ *
+ * @author cmachado
+ */
+public class ScanCursor implements Iterator<Entry>, Closeable {
+
+    private final Scan scan;
+    private final int prefetch;
+    private final ArrayDeque<CompletableFuture<EntryList>> pending;
+    private CompletableFuture<EntryList> tail;
+    private EntryList current;
+    private int position;
+    private boolean exhausted;
+    private volatile boolean closed;
+
+    /**
+     *
+     * @param scan
+     * @param prefetch
+     */
+    ScanCursor(Scan scan, int prefetch) {
+        this.scan = scan;
+        this.prefetch = prefetch;
+        this.pending = new ArrayDeque<>(prefetch + 1);
+        fill();
+    }
+
+    /**
+     * Stops fetching, frees the current and prefetched batches and closes the
+     * scan once no request is in flight.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+        for (CompletableFuture<EntryList> batch : pending) {
+            batch.thenAccept(list -> {
+                if (list != null) {
+                    list.close();
+                }
+            });
+        }
+        pending.clear();
+        if (tail != null) {
+            tail.whenComplete((list, error) -> scan.close());
+        } else {
+            scan.close();
+        }
+    }
+
+    /**
+     *
+     * @return
+     * @throws UncheckedAskarException if fetching the next batch fails.
+     */
+    @Override
+    public boolean hasNext() {
+        while (current == null || position >= current.size()) {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+            if (exhausted || closed) {
+                return false;
+            }
+            CompletableFuture<EntryList> batch = pending.poll();
+            fill();
+            try {
+                current = Futures.join(batch, scan.getTimeout());
+            } catch (AskarException ex) {
+                exhausted = true;
+                throw new UncheckedAskarException(ex);
+            }
+            position = 0;
+            if (current == null) {
+                exhausted = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return
+     * @throws UncheckedAskarException if fetching the next batch fails.
+     */
+    @Override
+    public Entry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.get(position++);
+    }
+
+    /**
+     * Requests batches until 'prefetch' are pending. Each request is only sent
+     * once the previous one has completed with a non-empty result.
+     */
+    private void fill() {
+        while (pending.size() < prefetch) {
+            CompletableFuture<EntryList> batch;
+            if (tail == null) {
+                batch = scan.nextListAsync();
+            } else {
+                batch = tail.thenCompose(previous -> previous == null || closed
+                        ? CompletableFuture.completedFuture(null)
+                        : scan.nextListAsync());
+            }
+            pending.add(batch);
+            tail = batch;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the rows of a store scan. Every subscriber gets its own scan, which
+ * is started on the first request. A new result batch is only fetched once the
+ * previous one has been fully delivered and the subscriber has outstanding
+ * demand, so at most one batch is held in memory per subscriber.
+ * <p>
+ * Signals are delivered on the library callback threads, or on the thread
+ * calling {@link Flow.Subscription#request(long)}. Each batch is materialized
+ * into {@link EntryRecord}s and freed as soon as it arrives, so subscribers may
+ * keep the records past {@link Flow.Subscriber#onNext(java.lang.Object)}.
+ *
+ * @author cmachado
+ */
+public class ScanPublisher implements Flow.Publisher<EntryRecord> {
+
+    private final AsyncStore store;
+    private final String profile;
+    private final String category;
+    private final String tagFilter;
+    private final long offset;
+    private final long limit;
+    private final String orderBy;
+    private final boolean descending;
+
+    /**
+     *
+     * @param store
+     * @param profile
+     * @param category
+     * @param tagFilter
+     * @param offset
+     * @param limit
+     * @param orderBy
+     * @param descending
+     */
+    ScanPublisher(AsyncStore store, String profile, String category, String tagFilter, long offset, long limit, String orderBy, boolean descending) {
+        this.store = store;
+        this.profile = profile;
+        this.category = category;
+        this.tagFilter = tagFilter;
+        this.offset = offset;
+        this.limit = limit;
+        this.orderBy = orderBy;
+        this.descending = descending;
+    }
+
+    /**
+     *
+     * @param subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super EntryRecord> subscriber) {
+        Objects.requireNonNull(subscriber);
+        ScanSubscription subscription = new ScanSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * State of a single subscriber. All state transitions happen inside
+     * {@link #drain()}, which is never run by two threads at once; the library
+     * callbacks only hand over their result and trigger a drain.
+     */
+    final class ScanSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super EntryRecord> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // written by callbacks, consumed by drain.
+        private volatile Scan startedScan;
+        private volatile EntryRecord[] arrived;
+        private volatile boolean exhausted;
+        private volatile Throwable error;
+        private volatile boolean waiting;
+        private volatile boolean cancelled;
+
+        // owned by drain.
+        private Scan scan;
+        private EntryRecord[] current;
+        private int position;
+        private boolean terminated;
+        private volatile boolean released;
+
+        ScanSubscription(Flow.Subscriber<? super EntryRecord> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Non-positive request " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!demand.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         *
+         * @return whether the subscription has ended and freed its scan.
+         */
+        boolean isReleased() {
+            return released;
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!terminated) {
+                    step();
+                }
+                if (terminated && !released) {
+                    release();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void step() {
+            if (scan == null && startedScan != null) {
+                scan = startedScan;
+            }
+            EntryRecord[] records = arrived;
+            if (records != null) {
+                arrived = null;
+                current = records;
+                position = 0;
+            }
+            if (cancelled) {
+                terminated = true;
+                return;
+            }
+            while (current != null && position < current.length && demand.get() > 0) {
+                EntryRecord record = current[position];
+                current[position++] = null;
+                demand.decrementAndGet();
+                try {
+                    subscriber.onNext(record);
+                } catch (Throwable ex) {
+                    cancelled = true;
+                }
+                if (cancelled) {
+                    terminated = true;
+                    return;
+                }
+            }
+            if (current != null && position >= current.length) {
+                current = null;
+            }
+            Throwable failure = error;
+            if (failure != null) {
+                terminated = true;
+                subscriber.onError(failure);
+                return;
+            }
+            if (current == null && exhausted) {
+                terminated = true;
+                subscriber.onComplete();
+                return;
+            }
+            if (current == null && !waiting && demand.get() > 0) {
+                waiting = true;
+                if (scan == null) {
+                    start();
+                } else {
+                    fetch();
+                }
+            }
+        }
+
+        private void start() {
+            store.scanStart(profile, category, tagFilter, offset, limit, orderBy, descending)
+                    .whenComplete((started, ex) -> {
+                        if (ex != null) {
+                            error = Futures.unwrap(ex);
+                        } else {
+                            startedScan = started;
+                        }
+                        waiting = false;
+                        drain();
+                    });
+        }
+
+        private void fetch() {
+            scan.nextListAsync().whenComplete((list, ex) -> {
+                if (ex != null) {
+                    error = Futures.unwrap(ex);
+                } else if (list == null) {
+                    exhausted = true;
+                } else {
+                    try (list) {
+                        arrived = list.materialize();
+                    } catch (AskarException | RuntimeException failure) {
+                        error = failure;
+                    }
+                }
+                waiting = false;
+                drain();
+            });
+        }
+
+        /**
+         * Closes the scan. A request still in flight is handled when it
+         * completes, as it triggers another drain.
+         */
+        private void release() {
+            current = null;
+            arrived = null;
+            if (waiting) {
+                return;
+            }
+            if (scan == null && startedScan != null) {
+                scan = startedScan;
+            }
+            if (scan != null) {
+                scan.close();
+            }
+            released = true;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the rows of a {@link Scan} that splits at result batch
+ * boundaries. Each call to {@link #trySplit()} hands a whole batch to another
+ * spliterator and requests the following batch in the background, so a
+ * parallel stream decodes and processes batches on the fork-join pool while
+ * the scan keeps being fetched in order.
+ * <p>
+ * Every batch is materialized into {@link EntryRecord}s and freed before its
+ * rows are passed on, so the records stay valid after the action returns.
+ *
+ * @author cmachado
+ */
+final class ScanSpliterator implements Spliterator<EntryRecord>, Closeable {
+
+    private static final int CHARACTERISTICS = ORDERED | NONNULL;
+
+    private final Scan scan;
+    private final ConcurrentLinkedQueue<EntryList> batches = new ConcurrentLinkedQueue<>();
+    private CompletableFuture<EntryList> next;
+    private EntryRecord[] current;
+    private int position;
+    private boolean exhausted;
+
+    /**
+     *
+     * @param scan
+     */
+    ScanSpliterator(Scan scan) {
+        this.scan = scan;
+        this.next = scan.nextListAsync();
+    }
+
+    /**
+     * Frees every batch not yet decoded and closes the scan.
+     */
+    @Override
+    public void close() {
+        exhausted = true;
+        current = null;
+        EntryList list;
+        while ((list = batches.poll()) != null) {
+            list.close();
+        }
+        if (next != null) {
+            next.whenComplete((pending, ex) -> {
+                if (pending != null) {
+                    pending.close();
+                }
+                scan.close();
+            });
+            next = null;
+        } else {
+            scan.close();
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super EntryRecord> action) {
+        while (current == null || position >= current.length) {
+            EntryList batch = take();
+            if (batch == null) {
+                current = null;
+                return false;
+            }
+            current = decode(batch);
+            position = 0;
+        }
+        action.accept(current[position++]);
+        if (position >= current.length) {
+            current = null;
+        }
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super EntryRecord> action) {
+        while (tryAdvance(action)) {
+            // keep going.
+        }
+    }
+
+    /**
+     * Splits off the remaining rows of the current batch, or else the next
+     * batch of the scan, which is decoded by whoever consumes the split.
+     *
+     * @return
+     */
+    @Override
+    public Spliterator<EntryRecord> trySplit() {
+        if (current != null && position < current.length) {
+            Spliterator<EntryRecord> rest = Arrays.spliterator(current, position, current.length);
+            current = null;
+            return rest;
+        }
+        current = null;
+        EntryList batch = take();
+        if (batch == null) {
+            return null;
+        }
+        return new BatchSpliterator(batch);
+    }
+
+    @Override
+    public long estimateSize() {
+        return exhausted && current == null ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    /**
+     * Waits for the pending batch and requests the following one.
+     *
+     * @return the batch, or {@code null} when the scan is exhausted.
+     */
+    private EntryList take() {
+        if (exhausted) {
+            return null;
+        }
+        EntryList batch;
+        try {
+            batch = Futures.join(next, scan.getTimeout());
+        } catch (AskarException ex) {
+            next = null;
+            exhausted = true;
+            throw new UncheckedAskarException(ex);
+        }
+        if (batch == null) {
+            next = null;
+            exhausted = true;
+            scan.close();
+            return null;
+        }
+        batches.add(batch);
+        next = scan.nextListAsync();
+        return batch;
+    }
+
+    /**
+     * Materializes a batch and frees it, unless the spliterator was closed in
+     * the meantime.
+     *
+     * @param batch
+     * @return the records of the batch.
+     */
+    private EntryRecord[] decode(EntryList batch) {
+        if (!batches.remove(batch)) {
+            throw new IllegalStateException("Cannot read a closed scan stream.");
+        }
+        try (batch) {
+            return batch.materialize();
+        } catch (AskarException ex) {
+            throw new UncheckedAskarException(ex);
+        }
+    }
+
+    /**
+     * Sized spliterator over the rows of one batch. The batch is decoded on
+     * the first traversal, by the thread that consumes this spliterator.
+     */
+    private final class BatchSpliterator implements Spliterator<EntryRecord> {
+
+        private final EntryList batch;
+        private final int size;
+        private EntryRecord[] records;
+        private int position;
+
+        BatchSpliterator(EntryList batch) {
+            this.batch = batch;
+            this.size = batch.size();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super EntryRecord> action) {
+            if (records == null) {
+                records = decode(batch);
+            }
+            if (position >= records.length) {
+                return false;
+            }
+            action.accept(records[position++]);
+            return true;
+        }
+
+        @Override
+        public Spliterator<EntryRecord> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return size - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS | SIZED | SUBSIZED;
+        }
+    }
+}
@@ -15,35 +15,98 @@
  */
 package pt.cjmach.jaskar;
 
-import com.sun.jna.Pointer;
 import java.io.Closeable;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Objects;
-import pt.cjmach.jaskar.lib.AskarCallback;
-import pt.cjmach.jaskar.lib.AskarLibrary;
-import pt.cjmach.jaskar.lib.ByteBuffer;
-import pt.cjmach.jaskar.lib.EntryOperation;
-import pt.cjmach.jaskar.lib.ErrorCode;
-import pt.cjmach.jaskar.lib.SizeT;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * An active connection to the store backend.
+ * An active connection to the store backend. Every operation blocks the 
+ * calling thread until the matching {@link AsyncSession} operation completes.
  * 
  * @author cmachado
  */
 public class Session implements Closeable {
 
-    private SizeT handle;
-    private final boolean isTransaction;
+    private final AsyncSession async;
+    private final Duration timeout;
 
     /**
      * 
-     * @param handle
-     * @param isTransaction 
+     * @param async 
      */
-    Session(SizeT handle, boolean isTransaction) {
-        this.handle = handle;
-        this.isTransaction = isTransaction;
+    Session(AsyncSession async) {
+        this(async, null);
+    }
+
+    /**
+     * 
+     * @param async
+     * @param timeout 
+     */
+    Session(AsyncSession async, Duration timeout) {
+        this.async = async;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the non-blocking view of this session.
+     * 
+     * @return 
+     */
+    public AsyncSession async() {
+        return async;
+    }
+
+    /**
+     * Get a view of this session whose blocking operations wait for the 
+     * library for at most 'timeout'. When an operation times out it fails 
+     * with an {@link AskarException} caused by a 
+     * {@link java.util.concurrent.TimeoutException}, and its result is freed 
+     * whenever it arrives. The session should then be closed, as the 
+     * operation may still be running.
+     * 
+     * @param timeout the timeout, or {@code null} to use the store default.
+     * @return a view sharing this session.
+     * @see Store#setDefaultTimeout(java.time.Duration)
+     */
+    public Session withTimeout(Duration timeout) {
+        return new Session(async, timeout);
+    }
+
+    /**
+     * 
+     * @return the timeout of the blocking operations of this view, or 
+     * {@code null} if they wait forever.
+     */
+    public Duration getTimeout() {
+        return timeout != null ? timeout : async().getStore().getDefaultTimeout();
+    }
+
+    /**
+     * Start a batch of record updates to be submitted back-to-back, with a
+     * single wait for the whole batch. Use it for bulk writes, typically
+     * within a transaction.
+     * 
+     * @return a new, empty, batch bound to this session.
+     */
+    public SessionBatch batch() {
+        return async().batch().timeout(getTimeout());
+    }
+
+    /**
+     * Get a view of one category of this session that reads and writes 
+     * values as objects.
+     * 
+     * @param <T>
+     * @param category
+     * @param codec
+     * @return
+     * @see JacksonCodecs
+     */
+    public <T> TypedSession<T> typed(String category, ValueCodec<T> codec) {
+        return new TypedSession<>(this, category, codec);
     }
 
     /**
@@ -65,20 +128,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public void close(boolean commit) throws AskarException {
-        if (handle != null) {
-            AskarCallback.Basic callback = new AskarCallback.Basic();
-            ErrorCode errorCode = AskarLibrary.askar_session_close(handle, (byte) (commit ? 1 : 0), callback, callback.getId());
-            if (errorCode != ErrorCode.SUCCESS) {
-                throw new AskarException();
-            }
-            
-            handle = null;
-            try {
-                callback.await();
-            } catch (InterruptedException ex) {
-                throw new AskarException(ex);
-            }
-        }
+        join(async().close(commit));
     }
     
     /**
@@ -87,11 +137,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public void commit() throws AskarException {
-        Objects.requireNonNull(handle, "Cannot commit a closed session.");
-        if (!isTransaction) {
-            throw new IllegalStateException("Session is not a transation.");
-        }
-        close(true);
+        join(async().commit());
     }
     
     /**
@@ -103,19 +149,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public long count(String category, String tagFilter) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot count from a closed session.");
-        AskarCallback.Long callback = new AskarCallback.Long();
-        ErrorCode errorCode = AskarLibrary.askar_session_count(handle, category, tagFilter, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            long result = callback.getLong();
-            return result;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async().count(category, tagFilter));
     }
 
     /**
@@ -128,25 +162,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public Entry fetch(String category, String name, boolean forUpdate) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot fetch from a closed session.");
-        Objects.requireNonNull(category);
-        Objects.requireNonNull(name);
-        AskarCallback.Pointer callback = new AskarCallback.Pointer();
-        ErrorCode errorCode = AskarLibrary.askar_session_fetch(handle, category, name, (byte) (forUpdate ? 1 : 0), callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            Pointer p = callback.getPointer();
-            if (p == Pointer.NULL) {
-                return null;
-            }
-            Entry entry = new Entry(p, 0);
-            return entry;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async().fetch(category, name, forUpdate));
     }
 
     /**
@@ -164,27 +180,29 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public EntryList fetchAll(String category, String tagFilter, long limit, String orderBy, boolean descending, boolean forUpdate) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot fetch from a closed session.");
-        Objects.requireNonNull(category);
-        Objects.requireNonNull(tagFilter);
-        Objects.requireNonNull(orderBy);
-        AskarCallback.Pointer callback = new AskarCallback.Pointer();
-        ErrorCode errorCode = AskarLibrary.askar_session_fetch_all(handle,
-                category, tagFilter, limit, orderBy, (byte) (descending ? 1 : 0),
-                (byte) (forUpdate ? 1 : 0), callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            Pointer p = callback.getPointer();
-            if (p == Pointer.NULL) {
-                return null;
-            }
-            EntryList list = new EntryList(p);
-            return list;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
+        return join(async().fetchAll(category, tagFilter, limit, orderBy, descending, forUpdate));
+    }
+
+    /**
+     * Pass all records matching the given 'category' and 'tagFilter' to a 
+     * visitor, without copying them into Java objects.
+     * 
+     * @param category
+     * @param tagFilter
+     * @param limit
+     * @param orderBy
+     * @param descending
+     * @param forUpdate
+     * @param visitor
+     * @return {@code true} if every record was visited, {@code false} if the 
+     * visitor stopped early.
+     * @throws AskarException 
+     * @see EntryList#visit(pt.cjmach.jaskar.EntryVisitor)
+     */
+    public boolean fetchAll(String category, String tagFilter, long limit, String orderBy, boolean descending, boolean forUpdate, EntryVisitor visitor) throws AskarException {
+        Objects.requireNonNull(visitor);
+        try (EntryList entries = fetchAll(category, tagFilter, limit, orderBy, descending, forUpdate)) {
+            return entries == null || entries.visit(visitor);
         }
     }
     
@@ -200,23 +218,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public KeyEntryList fetchAllKeys(KeyAlgorithm algorithm, String thumbprint, String tagFilter, long limit, boolean forUpdate) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot fetch from a closed session.");
-        AskarCallback.Pointer callback = new AskarCallback.Pointer();
-        ErrorCode errorCode = AskarLibrary.askar_session_fetch_all_keys(handle, algorithm.getAlgorithm(), thumbprint, tagFilter, limit, (byte)(forUpdate ? 1 : 0), callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            Pointer p = callback.getPointer();
-            if (p == Pointer.NULL) {
-                return null;
-            }
-            KeyEntryList list = new KeyEntryList(p);
-            return list;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async().fetchAllKeys(algorithm, thumbprint, tagFilter, limit, forUpdate));
     }
     
     /**
@@ -228,24 +230,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public KeyEntry fetchKey(String name, boolean forUpdate) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot fetch from a closed session.");
-        Objects.requireNonNull(name);
-        AskarCallback.Pointer callback = new AskarCallback.Pointer();
-        ErrorCode errorCode = AskarLibrary.askar_session_fetch_key(handle, name, (byte) (forUpdate ? 1 : 0), callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            Pointer p = callback.getPointer();
-            if (p == Pointer.NULL) {
-                return null;
-            }
-            KeyEntry entry = new KeyEntry(p, 0);
-            return entry;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async().fetchKey(name, forUpdate));
     }
 
     /**
@@ -259,23 +244,36 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public void insert(String category, String name, String tags, byte[] value, long expiryMs) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot insert with a closed session.");
-        Objects.requireNonNull(category);
-        Objects.requireNonNull(name);
-        try (ByteBuffer.ByValue buffer = new ByteBuffer.ByValue(value)) {
-            AskarCallback.Basic callback = new AskarCallback.Basic();
-            ErrorCode errorCode = AskarLibrary.askar_session_update(handle,
-                    EntryOperation.INSERT, category, name, buffer,
-                    tags, expiryMs, callback, callback.getId());
-            if (errorCode != ErrorCode.SUCCESS) {
-                throw new AskarException();
-            }
-            try {
-                callback.await();
-            } catch (InterruptedException ex) {
-                throw new AskarException(ex);
-            }
-        }
+        join(async().insert(category, name, tags, value, expiryMs));
+    }
+
+    /**
+     * Insert a new record into the store, with structured tags.
+     * 
+     * @param category
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @throws AskarException 
+     */
+    public void insert(String category, String name, byte[] value, Tags tags, long expiryMs) throws AskarException {
+        join(async().insert(category, name, value, tags, expiryMs));
+    }
+
+    /**
+     * Insert a new record into the store, reading the value from the
+     * remaining bytes of a direct buffer without copying it first.
+     * 
+     * @param category
+     * @param name
+     * @param tags
+     * @param value a direct buffer.
+     * @param expiryMs
+     * @throws AskarException 
+     */
+    public void insert(String category, String name, String tags, java.nio.ByteBuffer value, long expiryMs) throws AskarException {
+        join(async().insert(category, name, tags, value, expiryMs));
     }
     
     /**
@@ -289,20 +287,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public void insertKey(Key key, String name, String metadata, String tags, long expiryMs) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot insert key with a closed session.");
-        Objects.requireNonNull(name);
-        Objects.requireNonNull(metadata);
-        AskarCallback.Basic callback = new AskarCallback.Basic();
-        ErrorCode errorCode = AskarLibrary.askar_session_insert_key(handle, key.handle, 
-                name, metadata, tags, expiryMs, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        join(async().insertKey(key, name, metadata, tags, expiryMs));
     }
 
     /**
@@ -313,24 +298,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public void remove(String category, String name) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot remove with a closed session.");
-        Objects.requireNonNull(category);
-        Objects.requireNonNull(name);
-
-        try (ByteBuffer.ByValue value = new ByteBuffer.ByValue()) {
-            AskarCallback.Basic callback = new AskarCallback.Basic();
-            ErrorCode errorCode = AskarLibrary.askar_session_update(handle,
-                    EntryOperation.REMOVE, category, name, value, null, 0,
-                    callback, callback.getId());
-            if (errorCode != ErrorCode.SUCCESS) {
-                throw new AskarException();
-            }
-            try {
-                callback.await();
-            } catch (InterruptedException ex) {
-                throw new AskarException(ex);
-            }
-        }
+        join(async().remove(category, name));
     }
 
     /**
@@ -341,21 +309,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public long removeAll(String category, String tagFilter) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot remove with a closed session.");
-        Objects.requireNonNull(category);
-        Objects.requireNonNull(tagFilter);
-        AskarCallback.Long callback = new AskarCallback.Long();
-        ErrorCode errorCode = AskarLibrary.askar_session_remove_all(handle, category, tagFilter, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            long count = callback.getLong();
-            return count;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async().removeAll(category, tagFilter));
     }
     
     /**
@@ -365,18 +319,7 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public void removeKey(String name, long expiryMs) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot remove with a closed session.");
-        Objects.requireNonNull(name);
-        AskarCallback.Basic callback = new AskarCallback.Basic();
-        ErrorCode errorCode = AskarLibrary.askar_session_remove_key(handle, name, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        join(async().removeKey(name));
     }
 
     /**
@@ -390,23 +333,36 @@ public class Session implements Closeable {
      * @throws AskarException 
      */
     public void replace(String category, String name, String tags, byte[] value, long expiryMs) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot replace with a closed session.");
-        Objects.requireNonNull(category);
-        Objects.requireNonNull(name);
-        try (ByteBuffer.ByValue buffer = new ByteBuffer.ByValue(value)) {
-            AskarCallback.Basic callback = new AskarCallback.Basic();
-            ErrorCode errorCode = AskarLibrary.askar_session_update(handle,
-                    EntryOperation.REPLACE, category, name, buffer,
-                    tags, expiryMs, callback, callback.getId());
-            if (errorCode != ErrorCode.SUCCESS) {
-                throw new AskarException();
-            }
-            try {
-                callback.await();
-            } catch (InterruptedException ex) {
-                throw new AskarException(ex);
-            }
-        }
+        join(async().replace(category, name, tags, value, expiryMs));
+    }
+
+    /**
+     * Replace the value and tags of a record in the store, with structured tags.
+     * 
+     * @param category
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @throws AskarException 
+     */
+    public void replace(String category, String name, byte[] value, Tags tags, long expiryMs) throws AskarException {
+        join(async().replace(category, name, value, tags, expiryMs));
+    }
+
+    /**
+     * Replace the value and tags of a record in the store, reading the value from the
+     * remaining bytes of a direct buffer without copying it first.
+     * 
+     * @param category
+     * @param name
+     * @param tags
+     * @param value a direct buffer.
+     * @param expiryMs
+     * @throws AskarException 
+     */
+    public void replace(String category, String name, String tags, java.nio.ByteBuffer value, long expiryMs) throws AskarException {
+        join(async().replace(category, name, tags, value, expiryMs));
     }
     
     /**
@@ -415,11 +371,87 @@ public class Session implements Closeable {
      * @throws AskarException
      */
     public void rollback() throws AskarException {
-        Objects.requireNonNull(handle, "Cannot rollback a closed session.");
-        if (!isTransaction) {
-            throw new IllegalStateException("Session is not a transation.");
-        }
-        close(false);
+        join(async().rollback());
+    }
+
+    /**
+     * Insert a new record into the store, reporting an existing record as
+     * {@link UpdateStatus#DUPLICATE} instead of throwing. Expected conflicts
+     * are mapped from the error code alone, without fetching the error
+     * message or filling in a stack trace.
+     * 
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return
+     * @throws AskarException on any other error.
+     */
+    public UpdateStatus tryInsert(String category, String name, String tags, byte[] value, long expiryMs) throws AskarException {
+        return join(async().tryInsert(category, name, tags, value, expiryMs));
+    }
+
+    /**
+     * Insert a new record into the store, with structured tags, reporting an
+     * existing record as {@link UpdateStatus#DUPLICATE} instead of throwing.
+     * 
+     * @param category
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @return
+     * @throws AskarException on any other error.
+     */
+    public UpdateStatus tryInsert(String category, String name, byte[] value, Tags tags, long expiryMs) throws AskarException {
+        return join(async().tryInsert(category, name, value, tags, expiryMs));
+    }
+
+    /**
+     * Remove a record from the store, reporting a missing record as
+     * {@link UpdateStatus#NOT_FOUND} instead of throwing.
+     * 
+     * @param category
+     * @param name
+     * @return
+     * @throws AskarException on any other error.
+     */
+    public UpdateStatus tryRemove(String category, String name) throws AskarException {
+        return join(async().tryRemove(category, name));
+    }
+
+    /**
+     * Replace the value and tags of a record in the store, reporting a
+     * missing record as {@link UpdateStatus#NOT_FOUND} instead of throwing.
+     * 
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return
+     * @throws AskarException on any other error.
+     */
+    public UpdateStatus tryReplace(String category, String name, String tags, byte[] value, long expiryMs) throws AskarException {
+        return join(async().tryReplace(category, name, tags, value, expiryMs));
+    }
+
+    /**
+     * Replace the value and tags of a record in the store, with structured
+     * tags, reporting a missing record as {@link UpdateStatus#NOT_FOUND}
+     * instead of throwing.
+     * 
+     * @param category
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @return
+     * @throws AskarException on any other error.
+     */
+    public UpdateStatus tryReplace(String category, String name, byte[] value, Tags tags, long expiryMs) throws AskarException {
+        return join(async().tryReplace(category, name, value, tags, expiryMs));
     }
     
     /**
@@ -432,18 +464,14 @@ public class Session implements Closeable {
      * @throws AskarException
      */
     public void updateKey(String name, String metaData, String tags, long expiryMs) throws AskarException {
-        Objects.requireNonNull(handle, "Cannot update with a closed session.");
-        Objects.requireNonNull(name);
-        Objects.requireNonNull(metaData);
-        AskarCallback.Basic callback = new AskarCallback.Basic();
-        ErrorCode errorCode = AskarLibrary.askar_session_update_key(handle, name, metaData, tags, expiryMs, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        join(async().updateKey(name, metaData, tags, expiryMs));
+    }
+
+    /**
+     * Waits for an operation of this session, for at most the timeout of this
+     * view.
+     */
+    <T> T join(CompletableFuture<T> future) throws AskarException {
+        return Futures.join(future, getTimeout());
     }
 }
@@ -0,0 +1,312 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import pt.cjmach.jaskar.lib.EntryOperation;
+
+/**
+ * A batch of record updates submitted back-to-back to the same session. The
+ * library only runs one call at a time on a session handle, and rejects any
+ * other call on it as {@link pt.cjmach.jaskar.lib.ErrorCode#BUSY}, so the
+ * updates are sent one at a time, in the order they were added. Each update is
+ * submitted from the callback of the previous one, so the caller is only woken
+ * up once, when the whole batch has completed.
+ *
+ * @author cmachado
+ */
+public class SessionBatch {
+
+    private final AsyncSession session;
+    private final List<Operation> operations = new ArrayList<>();
+    private Duration timeout;
+
+    /**
+     *
+     * @param session
+     */
+    SessionBatch(AsyncSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Queue the insertion of a new record.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return this batch.
+     */
+    public SessionBatch insert(String category, String name, String tags, byte[] value, long expiryMs) {
+        return add(new Operation(operations.size(), EntryOperation.INSERT, category, name, tags, value, expiryMs));
+    }
+
+    /**
+     * Queue the replacement of the value and tags of a record.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return this batch.
+     */
+    public SessionBatch replace(String category, String name, String tags, byte[] value, long expiryMs) {
+        return add(new Operation(operations.size(), EntryOperation.REPLACE, category, name, tags, value, expiryMs));
+    }
+
+    /**
+     * Queue the removal of a record.
+     *
+     * @param category
+     * @param name
+     * @return this batch.
+     */
+    public SessionBatch remove(String category, String name) {
+        return add(new Operation(operations.size(), EntryOperation.REMOVE, category, name, null, null, 0));
+    }
+
+    /**
+     * Sets the maximum time {@link #execute()} waits for the updates.
+     *
+     * @param timeout the timeout, or {@code null} to wait forever.
+     * @return this batch.
+     */
+    SessionBatch timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     *
+     * @return the number of queued updates.
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Submit all queued updates, waiting once for all of them to complete.
+     *
+     * @return the outcome of the batch.
+     * @throws AskarException if interrupted or timed out while waiting.
+     */
+    public Result execute() throws AskarException {
+        return Futures.join(submitAsync(), timeout);
+    }
+
+    /**
+     * Submit all queued updates without waiting.
+     *
+     * @return a future completed with the outcome of the batch once every
+     * update has completed.
+     */
+    public CompletableFuture<Result> submitAsync() {
+        Runner runner = new Runner(new ArrayList<>(operations));
+        runner.run();
+        return runner.result;
+    }
+
+    private SessionBatch add(Operation operation) {
+        operations.add(operation);
+        return this;
+    }
+
+    private CompletableFuture<Void> submit(Operation operation) {
+        try {
+            switch (operation.operation) {
+                case INSERT:
+                    return session.insert(operation.category, operation.name, operation.tags, operation.value, operation.expiryMs);
+                case REPLACE:
+                    return session.replace(operation.category, operation.name, operation.tags, operation.value, operation.expiryMs);
+                default:
+                    return session.remove(operation.category, operation.name);
+            }
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /**
+     * Submits the updates of a batch in order, each one once the previous one
+     * has completed.
+     */
+    private final class Runner {
+
+        final List<Operation> pending;
+        final List<Failure> failures = new ArrayList<>();
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        int next;
+
+        Runner(List<Operation> pending) {
+            this.pending = pending;
+        }
+
+        /**
+         * Submits updates until one is still running, which calls back here
+         * once completed. Updates that complete right away, like rejected
+         * calls, are handled in this loop rather than by recursion.
+         */
+        void run() {
+            while (next < pending.size()) {
+                Operation operation = pending.get(next++);
+                CompletableFuture<Void> update = submit(operation);
+                if (!update.isDone()) {
+                    update.whenComplete((ignored, error) -> {
+                        completed(operation, error);
+                        run();
+                    });
+                    return;
+                }
+                try {
+                    update.join();
+                } catch (RuntimeException ex) {
+                    completed(operation, ex);
+                }
+            }
+            result.complete(new Result(pending.size(), failures));
+        }
+
+        private void completed(Operation operation, Throwable error) {
+            if (error != null) {
+                failures.add(new Failure(operation, Futures.unwrap(error)));
+            }
+        }
+    }
+
+    /**
+     * A queued update.
+     */
+    private static final class Operation {
+
+        final int index;
+        final EntryOperation operation;
+        final String category;
+        final String name;
+        final String tags;
+        final byte[] value;
+        final long expiryMs;
+
+        Operation(int index, EntryOperation operation, String category, String name, String tags, byte[] value, long expiryMs) {
+            this.index = index;
+            this.operation = operation;
+            this.category = Objects.requireNonNull(category);
+            this.name = Objects.requireNonNull(name);
+            this.tags = tags;
+            this.value = value;
+            this.expiryMs = expiryMs;
+        }
+    }
+
+    /**
+     * An update of the batch that failed.
+     */
+    public static final class Failure {
+
+        private final Operation operation;
+        private final AskarException cause;
+
+        private Failure(Operation operation, AskarException cause) {
+            this.operation = operation;
+            this.cause = cause;
+        }
+
+        /**
+         *
+         * @return the position of the update in the batch.
+         */
+        public int getIndex() {
+            return operation.index;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public EntryOperation getOperation() {
+            return operation.operation;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public String getCategory() {
+            return operation.category;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public String getName() {
+            return operation.name;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public AskarException getCause() {
+            return cause;
+        }
+    }
+
+    /**
+     * The outcome of a batch.
+     */
+    public static final class Result {
+
+        private final int size;
+        private final List<Failure> failures;
+
+        private Result(int size, List<Failure> failures) {
+            this.size = size;
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        /**
+         *
+         * @return {@code true} if every update succeeded.
+         */
+        public boolean isSuccess() {
+            return failures.isEmpty();
+        }
+
+        /**
+         *
+         * @return the number of updates in the batch.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         *
+         * @return the failed updates, in batch order.
+         */
+        public List<Failure> getFailures() {
+            return failures;
+        }
+    }
+}
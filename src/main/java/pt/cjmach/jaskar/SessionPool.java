@@ -0,0 +1,422 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of open, non-transactional, sessions, so short units of work
+ * do not pay for starting and closing a session each time. Sessions are kept
+ * per profile and handed out most recently used first. Each open session may
+ * hold a backend connection, so the pool should be smaller than the
+ * connection limit of the store.
+ * <p>
+ * Pooled sessions are not counted by the {@link ConcurrencyLimiter} of the
+ * store, as the pool bounds them itself.
+ * <p>
+ * A session is checked on checkout: it is replaced if it was closed through
+ * its non-blocking view, invalidated, or idle for longer than 'maxIdle'. Idle
+ * sessions past that age are also closed in the background.
+ *
+ * @author cmachado
+ * @see Store#createSessionPool(int, java.time.Duration, java.time.Duration)
+ */
+public class SessionPool implements Closeable {
+
+    private final Store store;
+    private final String defaultProfile;
+    private final int maxSize;
+    private final long maxIdleNanos;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Map<String, Deque<Slot>> idle = new HashMap<>();
+    private final ScheduledExecutorService evictor;
+    private int size;
+    private int idleCount;
+    private boolean closed;
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     *
+     * @param store
+     * @param maxSize
+     * @param maxIdle
+     * @param maxWait
+     * @throws AskarException
+     */
+    SessionPool(Store store, int maxSize, Duration maxIdle, Duration maxWait) throws AskarException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive.");
+        }
+        this.store = store;
+        this.defaultProfile = store.getDefaultProfile();
+        this.maxSize = maxSize;
+        this.maxIdleNanos = maxIdle.toNanos();
+        this.maxWaitNanos = maxWait.toNanos();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jaskar-session-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, maxIdle.toMillis() / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a session on the default profile of the store.
+     *
+     * @return a session to be closed once done, which returns it to the pool.
+     * @throws AskarException if no session could be had within 'maxWait'.
+     */
+    public PooledSession borrow() throws AskarException {
+        return borrow(defaultProfile);
+    }
+
+    /**
+     * Borrow a session on the given profile.
+     *
+     * @param profile the profile, or {@code null} for the default one.
+     * @return a session to be closed once done, which returns it to the pool.
+     * @throws AskarException if no session could be had within 'maxWait'.
+     */
+    public PooledSession borrow(String profile) throws AskarException {
+        String p = profile != null ? profile : defaultProfile;
+        List<Slot> stale = new ArrayList<>();
+        boolean open = false;
+        Slot result = null;
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            long remaining = maxWaitNanos;
+            boolean waited = false;
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("Cannot borrow from a closed session pool.");
+                }
+                result = takeIdle(p, stale);
+                if (result != null) {
+                    break;
+                }
+                if (size < maxSize) {
+                    size++;
+                    open = true;
+                    break;
+                }
+                // makes room by closing an idle session of another profile.
+                Slot other = takeAnyIdle();
+                if (other != null) {
+                    stale.add(other);
+                    open = true;
+                    break;
+                }
+                if (remaining <= 0) {
+                    timeouts.increment();
+                    throw new AskarException(new TimeoutException("No pooled session available within " + Duration.ofNanos(maxWaitNanos)));
+                }
+                waited = true;
+                try {
+                    remaining = available.awaitNanos(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new AskarException(ex);
+                }
+            }
+            if (waited) {
+                waits.increment();
+                waitNanos.add(System.nanoTime() - start);
+            }
+        } finally {
+            lock.unlock();
+            discard(stale);
+        }
+        if (open) {
+            try {
+                AsyncSession async = Futures.join(store.async().openSession(p, false, null), store.getTimeout());
+                result = new Slot(p, async);
+                created.increment();
+            } catch (AskarException | RuntimeException ex) {
+                lock.lock();
+                try {
+                    size--;
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+                throw ex;
+            }
+        } else {
+            reused.increment();
+        }
+        result.borrowed = true;
+        return new PooledSession(this, result);
+    }
+
+    /**
+     * Close the idle sessions, and the borrowed ones once returned.
+     */
+    @Override
+    public void close() {
+        List<Slot> sessions = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (Deque<Slot> queue : idle.values()) {
+                sessions.addAll(queue);
+            }
+            size -= sessions.size();
+            idleCount = 0;
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        evictor.shutdownNow();
+        discard(sessions);
+    }
+
+    /**
+     *
+     * @return the maximum number of open sessions.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     *
+     * @return the number of open sessions, idle or borrowed.
+     */
+    public int getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of idle sessions.
+     */
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idleCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of sessions started by the pool.
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /**
+     *
+     * @return the number of checkouts served by an idle session.
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     *
+     * @return the number of idle sessions closed for being too old, or to make
+     * room for another profile.
+     */
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    /**
+     *
+     * @return the number of checkouts that had to wait for a session.
+     */
+    public long getWaitCount() {
+        return waits.sum();
+    }
+
+    /**
+     *
+     * @return the total time spent waiting by checkouts.
+     */
+    public Duration getTotalWaitTime() {
+        return Duration.ofNanos(waitNanos.sum());
+    }
+
+    /**
+     *
+     * @return the number of checkouts that gave up after 'maxWait'.
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Takes a session back, closing it instead if it cannot be reused.
+     *
+     * @param session
+     */
+    void release(Slot session) {
+        boolean keep;
+        lock.lock();
+        try {
+            if (!session.borrowed) {
+                return;
+            }
+            session.borrowed = false;
+            keep = !closed && session.isValid();
+            if (keep) {
+                session.lastUsedAt = System.nanoTime();
+                idle.computeIfAbsent(session.profile, k -> new ArrayDeque<>()).push(session);
+                idleCount++;
+            } else {
+                size--;
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (!keep) {
+            session.discard();
+        }
+    }
+
+    /**
+     * Closes the sessions idle for longer than 'maxIdle'.
+     */
+    void evictIdle() {
+        List<Slot> stale = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (Deque<Slot> queue : idle.values()) {
+                // the least recently used sessions are at the tail.
+                while (!queue.isEmpty() && now - queue.peekLast().lastUsedAt > maxIdleNanos) {
+                    stale.add(queue.pollLast());
+                }
+            }
+            removeIdle(stale);
+        } finally {
+            lock.unlock();
+        }
+        discard(stale);
+    }
+
+    private Slot takeIdle(String profile, List<Slot> stale) {
+        Deque<Slot> queue = idle.get(profile);
+        if (queue == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        Slot session;
+        while ((session = queue.poll()) != null) {
+            idleCount--;
+            if (session.isValid() && now - session.lastUsedAt <= maxIdleNanos) {
+                return session;
+            }
+            size--;
+            stale.add(session);
+        }
+        return null;
+    }
+
+    private Slot takeAnyIdle() {
+        for (Deque<Slot> queue : idle.values()) {
+            Slot session = queue.pollLast();
+            if (session != null) {
+                idleCount--;
+                return session;
+            }
+        }
+        return null;
+    }
+
+    private void removeIdle(List<Slot> sessions) {
+        idleCount -= sessions.size();
+        size -= sessions.size();
+        if (!sessions.isEmpty()) {
+            available.signalAll();
+        }
+    }
+
+    private void discard(List<Slot> sessions) {
+        Iterator<Slot> iterator = sessions.iterator();
+        while (iterator.hasNext()) {
+            iterator.next().discard();
+            evicted.increment();
+        }
+    }
+
+    /**
+     * A native session owned by the pool. Each checkout wraps it in a new
+     * {@link PooledSession}. Guarded by the pool lock, except for 'invalid'.
+     */
+    static final class Slot {
+
+        final String profile;
+        final AsyncSession async;
+        long lastUsedAt;
+        boolean borrowed;
+        volatile boolean invalid;
+
+        Slot(String profile, AsyncSession async) {
+            this.profile = profile;
+            this.async = async;
+        }
+
+        /**
+         *
+         * @return whether the native session can be handed out again.
+         */
+        boolean isValid() {
+            return !invalid && async.isOpen();
+        }
+
+        /**
+         * Closes the native session.
+         */
+        void discard() {
+            async.close(false);
+        }
+    }
+}
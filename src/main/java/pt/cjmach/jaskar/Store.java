@@ -15,37 +15,92 @@
  */
 package pt.cjmach.jaskar;
 
-import pt.cjmach.jaskar.lib.StringList;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.PointerByReference;
 import java.io.Closeable;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Objects;
-import pt.cjmach.jaskar.lib.AskarCallback;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import pt.cjmach.jaskar.lib.AskarLibrary;
 import pt.cjmach.jaskar.lib.ByteBuffer;
 import pt.cjmach.jaskar.lib.ErrorCode;
-import pt.cjmach.jaskar.lib.SizeT;
 
 /**
- * An instance of an opened store.
+ * An instance of an opened store. Every operation blocks the calling thread 
+ * until the matching {@link AsyncStore} operation completes.
  * 
  * @author cmachado
  */
 public class Store implements Closeable {
 
-    private final SizeT handle;
-    private final String uri;
+    private final AsyncStore async;
+    private final Duration timeout;
 
     /**
      * 
-     * @param handle
-     * @param uri 
+     * @param async 
      */
-    Store(SizeT handle, String uri) {
-        this.handle = handle;
-        this.uri = uri;
+    Store(AsyncStore async) {
+        this(async, null);
+    }
+
+    /**
+     * 
+     * @param async
+     * @param timeout 
+     */
+    private Store(AsyncStore async, Duration timeout) {
+        this.async = async;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Get a view of this store whose blocking operations, and those of the 
+     * sessions and scans it opens, wait for the library for at most 
+     * 'timeout'. When an operation times out it fails with an 
+     * {@link AskarException} caused by a 
+     * {@link java.util.concurrent.TimeoutException}, and its result is freed
+     * whenever it arrives.
+     * 
+     * @param timeout the timeout, or {@code null} to use the store default.
+     * @return 
+     * @see #setDefaultTimeout(java.time.Duration)
+     */
+    public Store withTimeout(Duration timeout) {
+        return new Store(async, timeout);
+    }
+
+    /**
+     * Set the maximum time blocking operations wait for the library, unless
+     * given another timeout.
+     * 
+     * @param timeout the timeout, or {@code null} to wait forever.
+     * @see #withTimeout(java.time.Duration)
+     */
+    public void setDefaultTimeout(Duration timeout) {
+        async.setDefaultTimeout(timeout);
+    }
+
+    /**
+     * 
+     * @return the timeout of the blocking operations of this view, or 
+     * {@code null} if they wait forever.
+     */
+    public Duration getTimeout() {
+        return timeout != null ? timeout : async.getDefaultTimeout();
+    }
+
+    /**
+     * Gets the non-blocking view of this store.
+     * 
+     * @return 
+     */
+    public AsyncStore async() {
+        return async;
     }
 
     /**
@@ -70,20 +125,7 @@ public class Store implements Closeable {
      * @throws AskarException 
      */
     public boolean close(boolean alsoRemove) throws AskarException {
-        AskarCallback.Basic callback = new AskarCallback.Basic();
-        ErrorCode errorCode = AskarLibrary.askar_store_close(handle, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            if (alsoRemove) {
-                return remove(uri);
-            }
-            return true;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async.close(alsoRemove));
     }
 
     /**
@@ -96,18 +138,7 @@ public class Store implements Closeable {
      */
     public void copyProfile(Store toStore, String fromProfile, String toProfile) throws AskarException {
         Objects.requireNonNull(toStore);
-        Objects.requireNonNull(fromProfile);
-        Objects.requireNonNull(toProfile);
-        AskarCallback.Basic callback = new AskarCallback.Basic();
-        ErrorCode errorCode = AskarLibrary.askar_store_copy_profile(handle, toStore.handle, fromProfile, toProfile, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        join(async.copyProfile(toStore.async, fromProfile, toProfile));
     }
 
     /**
@@ -121,21 +152,7 @@ public class Store implements Closeable {
      * @throws AskarException 
      */
     public Store copyTo(String uri, StoreKeyMethod method, String passKey, boolean recreate) throws AskarException {
-        Objects.requireNonNull(uri);
-        Objects.requireNonNull(method);
-        Objects.requireNonNull(passKey);
-        AskarCallback.SizeT callback = new AskarCallback.SizeT();
-        ErrorCode errorCode = AskarLibrary.askar_store_copy(handle, uri, method.getMethod(), passKey, (byte) (recreate ? 1 : 0), callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            SizeT storeHandle = callback.getSizeT();
-            return new Store(storeHandle, uri);
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async.copyTo(uri, method, passKey, recreate)).blocking();
     }
 
     /**
@@ -146,19 +163,7 @@ public class Store implements Closeable {
      * @throws AskarException 
      */
     public String createProfile(String name) throws AskarException {
-        Objects.requireNonNull(name);
-        AskarCallback.String callback = new AskarCallback.String();
-        ErrorCode errorCode = AskarLibrary.askar_store_create_profile(handle, name, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            String result = callback.getString();
-            return result;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async.createProfile(name));
     }
 
     /**
@@ -168,18 +173,7 @@ public class Store implements Closeable {
      * @throws AskarException 
      */
     public String getDefaultProfile() throws AskarException {
-        AskarCallback.String callback = new AskarCallback.String();
-        ErrorCode errorCode = AskarLibrary.askar_store_get_default_profile(handle, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            String profile = callback.getString();
-            return profile;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async.getDefaultProfile());
     }
 
     /**
@@ -188,7 +182,7 @@ public class Store implements Closeable {
      * @return 
      */
     public String getUri() {
-        return uri;
+        return async.getUri();
     }
 
     /**
@@ -198,23 +192,104 @@ public class Store implements Closeable {
      * @throws AskarException 
      */
     public String[] listProfiles() throws AskarException {
-        AskarCallback.Pointer callback = new AskarCallback.Pointer();
-        ErrorCode errorCode = AskarLibrary.askar_store_list_profiles(handle, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            Pointer results = callback.getPointer();
-            if (results == Pointer.NULL) {
-                return null;
-            }
-            try (StringList list = new StringList(results)) {
-                return list.toArray();
-            }
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async.listProfiles());
+    }
+
+    /**
+     * Keep a Bloom filter of the record names of a category, so fetching a 
+     * record that does not exist returns {@code null} without querying the 
+     * backend, save for the configured rate of false positives. The filter is
+     * built from a scan of the category and names are added to it as they are
+     * inserted or replaced through this store, but never removed.
+     * <p>
+     * The filter is only sound if every write to the category goes through 
+     * this store instance: a record inserted by another process could be 
+     * reported as missing. Likewise, no transaction writing to the category 
+     * should be pending while the filter is built.
+     * 
+     * @param profile the profile, or {@code null} for the default one.
+     * @param category
+     * @param expectedNames the number of names the filter is sized for. The 
+     * false positive rate grows past it.
+     * @param falsePositiveRate
+     * @throws AskarException 
+     */
+    public void enableNameFilter(String profile, String category, long expectedNames, double falsePositiveRate) throws AskarException {
+        Objects.requireNonNull(category);
+        String p = profile != null ? profile : getDefaultProfile();
+        NameFilter filter = new NameFilter(expectedNames, falsePositiveRate);
+        // registered before the scan, so names inserted meanwhile are not lost.
+        async.setNameFilter(p, category, filter);
+        try (Scan scan = scanStart(p, category, null, 0, -1, null, false)) {
+            scan.visit((c, name, tags, value) -> {
+                filter.add(name.toString());
+                return true;
+            });
+        } catch (AskarException | RuntimeException ex) {
+            async.setNameFilter(p, category, null);
+            throw ex;
+        }
+        filter.setReady();
+    }
+
+    /**
+     * Stop using the name filter of a category.
+     * 
+     * @param profile the profile, or {@code null} for the default one.
+     * @param category 
+     * @throws AskarException 
+     */
+    public void disableNameFilter(String profile, String category) throws AskarException {
+        Objects.requireNonNull(category);
+        async.setNameFilter(profile != null ? profile : getDefaultProfile(), category, null);
+    }
+
+    /**
+     * Load every record of a category into memory, and keep it up to date.
+     * 
+     * @param profile the profile, or {@code null} for the default one.
+     * @param category
+     * @return a new {@link MaterializedCategory}, which must be closed.
+     * @throws AskarException 
+     */
+    public MaterializedCategory materialize(String profile, String category) throws AskarException {
+        return materialize(profile, category, MaterializedCategory.DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Load every record of a category into memory, and keep it up to date.
+     * 
+     * @param profile the profile, or {@code null} for the default one.
+     * @param category
+     * @param refreshInterval the interval between full reloads of the 
+     * category, which pick up writes done without this store.
+     * @return a new {@link MaterializedCategory}, which must be closed.
+     * @throws AskarException 
+     * @throws IllegalArgumentException if 'refreshInterval' is shorter than a
+     * millisecond.
+     */
+    public MaterializedCategory materialize(String profile, String category, Duration refreshInterval) throws AskarException {
+        Objects.requireNonNull(category);
+        Objects.requireNonNull(refreshInterval);
+        return new MaterializedCategory(this, profile != null ? profile : getDefaultProfile(), category, refreshInterval);
+    }
+
+    /**
+     * Register a listener for the record writes done through the sessions of
+     * this store.
+     * 
+     * @param listener 
+     */
+    public void addWriteListener(WriteListener listener) {
+        async.addWriteListener(listener);
+    }
+
+    /**
+     * 
+     * @param listener 
+     */
+    public void removeWriteListener(WriteListener listener) {
+        async.removeWriteListener(listener);
     }
 
     /**
@@ -239,7 +314,9 @@ public class Store implements Closeable {
     }
 
     /**
-     * Create a new session against the store.
+     * Create a new session against the store. The wait for a session permit, 
+     * when a concurrency limiter is set, counts against the timeout of this 
+     * view.
      * 
      * @param profile
      * @param isTransaction
@@ -247,19 +324,46 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public Session openSession(String profile, boolean isTransaction) throws AskarException {
-        AskarCallback.SizeT callback = new AskarCallback.SizeT();
-        ErrorCode errorCode = AskarLibrary.askar_session_start(handle, profile, (byte) (isTransaction ? 1 : 0), callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            SizeT sessionHandle = callback.getSizeT();
-            Session session = new Session(sessionHandle, isTransaction);
-            return session;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        ConcurrencyLimiter limiter = async.getConcurrencyLimiter();
+        AsyncSession session;
+        if (limiter == null) {
+            session = join(async.openSession(profile, isTransaction));
+        } else {
+            Duration limit = getTimeout();
+            long startedAt = System.nanoTime();
+            ConcurrencyLimiter.Permit permit = limit == null ? limiter.acquire() : limiter.acquire(limit.toNanos());
+            Duration left = limit == null ? null : limit.minusNanos(System.nanoTime() - startedAt);
+            session = Futures.join(async.openSession(profile, isTransaction, permit), left);
+        }
+        return timeout == null ? session.blocking() : session.blocking().withTimeout(timeout);
+    }
+
+    /**
+     * Cap the number of sessions open at the same time. Callers over the limit
+     * wait in the limiter queue, or fail with {@link ErrorCode#BUSY}.
+     * 
+     * @param limiter the limiter, or {@code null} to remove the cap. Sessions
+     * already open are not affected.
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        async.setConcurrencyLimiter(limiter);
+    }
+
+    /**
+     * Create a pool of reusable, non-transactional, sessions against the 
+     * store.
+     * 
+     * @param maxSize the maximum number of open sessions.
+     * @param maxIdle the time after which an unused session is closed.
+     * @param maxWait the maximum time a checkout waits for a session when the
+     * pool is exhausted.
+     * @return a new {@link SessionPool}, which must be closed.
+     * @throws AskarException 
+     */
+    public SessionPool createSessionPool(int maxSize, Duration maxIdle, Duration maxWait) throws AskarException {
+        Objects.requireNonNull(maxIdle);
+        Objects.requireNonNull(maxWait);
+        return new SessionPool(this, maxSize, maxIdle, maxWait);
     }
 
     /**
@@ -270,16 +374,7 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public void rekey(StoreKeyMethod method, String passKey) throws AskarException {
-        AskarCallback.Basic callback = new AskarCallback.Basic();
-        ErrorCode errorCode = AskarLibrary.askar_store_rekey(handle, method.getMethod(), passKey, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        join(async.rekey(method, passKey));
     }
 
     /**
@@ -290,19 +385,7 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public boolean removeProfile(String name) throws AskarException {
-        Objects.requireNonNull(name);
-        AskarCallback.Byte callback = new AskarCallback.Byte();
-        ErrorCode errorCode = AskarLibrary.askar_store_remove_profile(handle, name, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            boolean removed = callback.getBoolean();
-            return removed;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async.removeProfile(name));
     }
 
     /**
@@ -314,20 +397,7 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public boolean renameProfile(String oldName, String newName) throws AskarException {
-        Objects.requireNonNull(oldName);
-        Objects.requireNonNull(newName);
-        AskarCallback.Byte callback = new AskarCallback.Byte();
-        ErrorCode errorCode = AskarLibrary.askar_store_rename_profile(handle, oldName, newName, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            boolean renamed = callback.getBoolean();
-            return renamed;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return join(async.renameProfile(oldName, newName));
     }
     
     /**
@@ -344,19 +414,80 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public Scan scanStart(String profile, String category, String tagFilter, long offset, long limit, String orderBy, boolean descending) throws AskarException {
-        AskarCallback.SizeT callback = new AskarCallback.SizeT();
-        ErrorCode errorCode = AskarLibrary.askar_scan_start(handle, profile, category, tagFilter, offset, limit, orderBy, (byte)(descending ? 1 : 0), callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
+        return join(async.scanStart(profile, category, tagFilter, offset, limit, orderBy, descending))
+                .setTimeout(getTimeout());
+    }
+
+    /**
+     * Create a stream over the rows of a scan against the store. The stream 
+     * splits at result batch boundaries, so a parallel stream decodes and 
+     * processes whole batches on the fork-join pool while the scan is fetched 
+     * in order. 
+     * <p>
+     * Each batch is materialized into {@link EntryRecord}s and freed before 
+     * its rows are passed on. The stream must be closed to release the scan.
+     * 
+     * @param profile
+     * @param category
+     * @param tagFilter
+     * @param offset
+     * @param limit
+     * @param orderBy
+     * @param descending
+     * @return
+     * @throws AskarException
+     */
+    public Stream<EntryRecord> scanStream(String profile, String category, String tagFilter, long offset, long limit, String orderBy, boolean descending) throws AskarException {
+        Scan scan = scanStart(profile, category, tagFilter, offset, limit, orderBy, descending);
+        ScanSpliterator spliterator = new ScanSpliterator(scan);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * Scan the rows matching a filter as several partitions at the same time,
+     * each on its own scan and backend connection. The matching rows are
+     * counted first and the range is split into 'partitions' offset ranges of
+     * the same size. An 'orderBy' should be given, so partitions don't overlap.
+     *
+     * @param profile
+     * @param category
+     * @param tagFilter
+     * @param orderBy
+     * @param descending
+     * @param partitions the maximum number of partitions scanned at once.
+     * @param ordered whether the rows are returned in scan order, otherwise
+     * batches are returned as they arrive.
+     * @return a new {@link ParallelScan} instance, which must be closed if not
+     * fully consumed.
+     * @throws AskarException
+     */
+    public ParallelScan parallelScan(String profile, String category, String tagFilter, String orderBy, boolean descending, int partitions, boolean ordered) throws AskarException {
+        long count;
+        Session session = openSession(profile, false);
         try {
-            callback.await();
-            SizeT scanHandle = callback.getSizeT();
-            Scan scan = new Scan(scanHandle);
-            return scan;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
+            count = session.count(category, tagFilter);
+        } finally {
+            session.close(false);
         }
+        return new ParallelScan(async, profile, category, tagFilter, 0, count, orderBy, descending, partitions, ordered, getTimeout());
+    }
+
+    /**
+     * Create a pager over the records of a category, which seeks each page by
+     * the value of the plaintext tag 'keyTag' rather than by offset.
+     *
+     * @param profile
+     * @param category
+     * @param tagFilter
+     * @param keyTag the name of a unique plaintext tag (starting with '~')
+     * whose values sort in insertion order.
+     * @param pageSize
+     * @param descending
+     * @return
+     * @see Pager
+     */
+    public Pager pager(String profile, String category, String tagFilter, String keyTag, int pageSize, boolean descending) {
+        return new Pager(this, profile, category, tagFilter, keyTag, pageSize, descending);
     }
 
     /**
@@ -366,17 +497,11 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public void setDefaultProfile(String name) throws AskarException {
-        Objects.requireNonNull(name);
-        AskarCallback.Basic callback = new AskarCallback.Basic();
-        ErrorCode errorCode = AskarLibrary.askar_store_set_default_profile(handle, name, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        join(async.setDefaultProfile(name));
+    }
+
+    private <T> T join(CompletableFuture<T> future) throws AskarException {
+        return Futures.join(future, getTimeout());
     }
 
     /**
@@ -421,21 +546,7 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public static Store open(String specUri, StoreKeyMethod keyMethod, String passKey, String profile) throws AskarException {
-        Objects.requireNonNull(specUri);
-        Objects.requireNonNull(keyMethod);
-        Objects.requireNonNull(passKey);
-        AskarCallback.SizeT callback = new AskarCallback.SizeT();
-        ErrorCode errorCode = AskarLibrary.askar_store_open(specUri, keyMethod.getMethod(), passKey, profile, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            Store store = new Store(callback.getSizeT(), specUri);
-            return store;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return Futures.join(AsyncStore.open(specUri, keyMethod, passKey, profile)).blocking();
     }
 
     /**
@@ -450,21 +561,7 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public static Store provision(String specUri, StoreKeyMethod keyMethod, String passKey, String profile, boolean recreate) throws AskarException {
-        Objects.requireNonNull(specUri);
-        Objects.requireNonNull(keyMethod);
-        Objects.requireNonNull(passKey);
-        AskarCallback.SizeT callback = new AskarCallback.SizeT();
-        ErrorCode errorCode = AskarLibrary.askar_store_provision(specUri, keyMethod.getMethod(), passKey, profile, (byte) (recreate ? 1 : 0), callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            Store store = new Store(callback.getSizeT(), specUri);
-            return store;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return Futures.join(AsyncStore.provision(specUri, keyMethod, passKey, profile, recreate)).blocking();
     }
 
     /**
@@ -475,17 +572,6 @@ public class Store implements Closeable {
      * @throws AskarException
      */
     public static boolean remove(String uri) throws AskarException {
-        AskarCallback.Byte callback = new AskarCallback.Byte();
-        ErrorCode errorCode = AskarLibrary.askar_store_remove(uri, callback, callback.getId());
-        if (errorCode != ErrorCode.SUCCESS) {
-            throw new AskarException();
-        }
-        try {
-            callback.await();
-            boolean removed = callback.getBoolean();
-            return removed;
-        } catch (InterruptedException ex) {
-            throw new AskarException(ex);
-        }
+        return Futures.join(AsyncStore.remove(uri));
     }
 }
@@ -0,0 +1,444 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import pt.cjmach.jaskar.lib.ByteBuffer;
+import pt.cjmach.jaskar.lib.NativeOutputStream;
+
+/**
+ * Immutable, ordered, set of record tags. Each tag has a name and one or more
+ * string values. Tags are stored encrypted, unless their name starts with
+ * {@value #PLAINTEXT_PREFIX}, in which case they are stored in plaintext and
+ * support range and pattern filters.
+ * <p>
+ * Tags read from the store keep their JSON form and are only parsed the first
+ * time a tag is accessed. Tags written to the store are encoded by a JSON
+ * generator that each thread creates once and reuses for every write.
+ *
+ * @author cmachado
+ */
+public final class Tags {
+
+    /**
+     * Name prefix of plaintext tags.
+     */
+    public static final String PLAINTEXT_PREFIX = "~";
+
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+    private static final Tags EMPTY = new Tags(Collections.emptyMap());
+    private static final ThreadLocal<Encoder> ENCODER = new ThreadLocal<>();
+
+    private final String json;
+    private volatile Map<String, List<String>> tags;
+
+    private Tags(Map<String, List<String>> tags) {
+        this.json = null;
+        this.tags = tags;
+    }
+
+    private Tags(String json) {
+        this.json = json;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public static Tags empty() {
+        return EMPTY;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Wraps tags in the JSON form used by the library. The JSON is only parsed
+     * when a tag is first accessed.
+     *
+     * @param json
+     * @return the tags, or {@code null} if 'json' is {@code null}.
+     */
+    public static Tags parse(String json) {
+        return json == null ? null : new Tags(json);
+    }
+
+    /**
+     *
+     * @param name
+     * @return
+     */
+    public static boolean isPlaintext(String name) {
+        return name.startsWith(PLAINTEXT_PREFIX);
+    }
+
+    /**
+     *
+     * @param name
+     * @return the first value of the tag, or {@code null} if there is no such
+     * tag.
+     */
+    public String get(String name) {
+        List<String> values = map().get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    /**
+     *
+     * @param name
+     * @return every value of the tag, which is empty if there is no such tag.
+     */
+    public List<String> getAll(String name) {
+        List<String> values = map().get(name);
+        return values == null ? Collections.emptyList() : values;
+    }
+
+    /**
+     *
+     * @param name
+     * @return
+     */
+    public boolean contains(String name) {
+        return map().containsKey(name);
+    }
+
+    /**
+     *
+     * @return the tag names, in order.
+     */
+    public Set<String> names() {
+        return map().keySet();
+    }
+
+    /**
+     *
+     * @return the tags, in order.
+     */
+    public Map<String, List<String>> asMap() {
+        return map();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int size() {
+        return map().size();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return map().isEmpty();
+    }
+
+    /**
+     *
+     * @return the tags in the JSON form used by the library.
+     */
+    public String toJson() {
+        if (json != null) {
+            return json;
+        }
+        try {
+            Encoder encoder = Encoder.acquire();
+            encoder.buffer.reset();
+            encode(encoder, encoder.buffer);
+            String result = encoder.buffer.toString(StandardCharsets.UTF_8);
+            encoder.release();
+            return result;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes the tags in the JSON form used by the library.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (json != null) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        Encoder encoder = Encoder.acquire();
+        encode(encoder, out);
+        encoder.release();
+    }
+
+    /**
+     * Encodes the tags as a NUL terminated string in pooled native memory. The
+     * generator writes straight into the native memory, without a heap copy.
+     *
+     * @return a buffer to be closed once the library has read it.
+     * @throws IOException
+     */
+    ByteBuffer.ByValue toNative() throws IOException {
+        try (NativeOutputStream out = new NativeOutputStream()) {
+            writeTo(out);
+            out.write(0);
+            return out.toByteBuffer();
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Tags)) {
+            return false;
+        }
+        return map().equals(((Tags) obj).map());
+    }
+
+    @Override
+    public int hashCode() {
+        return map().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /**
+     * Encodes the tags with a detached encoder, pointing its generator at the
+     * given stream for the duration of the write.
+     *
+     * @param encoder
+     * @param out
+     * @throws IOException
+     */
+    private void encode(Encoder encoder, OutputStream out) throws IOException {
+        encoder.target.out = out;
+        write(encoder.generator);
+        encoder.generator.flush();
+        encoder.target.out = null;
+    }
+
+    private void write(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, List<String>> tag : tags.entrySet()) {
+            generator.writeFieldName(tag.getKey());
+            List<String> values = tag.getValue();
+            if (values.size() == 1) {
+                generator.writeString(values.get(0));
+            } else {
+                generator.writeStartArray();
+                for (String value : values) {
+                    generator.writeString(value);
+                }
+                generator.writeEndArray();
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private Map<String, List<String>> map() {
+        Map<String, List<String>> result = tags;
+        if (result == null) {
+            result = read(json);
+            tags = result;
+        }
+        return result;
+    }
+
+    private static Map<String, List<String>> read(String json) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Tags must be a JSON object: " + json);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY) {
+                    List<String> values = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        values.add(parser.getValueAsString());
+                    }
+                    result.put(name, Collections.unmodifiableList(values));
+                } else {
+                    result.put(name, List.of(parser.getValueAsString()));
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Invalid tags: " + json, ex);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * A JSON generator bound to a stream that can be pointed at a new target
+     * before each write, and a reusable buffer for {@link #toJson()}. Buffers
+     * grown past {@link #MAX_RETAINED} bytes are dropped rather than kept by
+     * the thread.
+     */
+    private static final class Encoder {
+
+        static final int MAX_RETAINED = 64 * 1024;
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        final Target target = new Target();
+        final JsonGenerator generator;
+
+        Encoder() throws IOException {
+            generator = FACTORY.createGenerator(target);
+            // consecutive tag sets are separate documents, not a sequence.
+            generator.setRootValueSeparator(null);
+        }
+
+        /**
+         * Takes the encoder of the calling thread, or creates one. The encoder
+         * is detached from the thread until released, so an encoding that
+         * fails halfway never leaves a broken generator behind.
+         *
+         * @return
+         * @throws IOException
+         */
+        static Encoder acquire() throws IOException {
+            Encoder encoder = ENCODER.get();
+            if (encoder == null) {
+                return new Encoder();
+            }
+            ENCODER.remove();
+            return encoder;
+        }
+
+        void release() {
+            if (buffer.size() <= MAX_RETAINED) {
+                ENCODER.set(this);
+            }
+        }
+    }
+
+    /**
+     * Output stream forwarding to the current target of an encoder.
+     */
+    private static final class Target extends OutputStream {
+
+        OutputStream out;
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Builds a set of tags, keeping the order in which they were added.
+     */
+    public static final class Builder {
+
+        private final LinkedHashMap<String, List<String>> tags = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds an encrypted tag.
+         *
+         * @param name
+         * @param values
+         * @return
+         */
+        public Builder encrypted(String name, String... values) {
+            if (isPlaintext(name)) {
+                throw new IllegalArgumentException("Encrypted tag name cannot start with " + PLAINTEXT_PREFIX);
+            }
+            return put(name, values);
+        }
+
+        /**
+         * Adds a plaintext tag.
+         *
+         * @param name the name, without the {@value Tags#PLAINTEXT_PREFIX} prefix.
+         * @param values
+         * @return
+         */
+        public Builder plaintext(String name, String... values) {
+            return put(PLAINTEXT_PREFIX + name, values);
+        }
+
+        /**
+         * Adds all tags of another set.
+         *
+         * @param other
+         * @return
+         */
+        public Builder putAll(Tags other) {
+            tags.putAll(other.map());
+            return this;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public Tags build() {
+            return tags.isEmpty() ? EMPTY : new Tags(Collections.unmodifiableMap(new LinkedHashMap<>(tags)));
+        }
+
+        private Builder put(String name, String... values) {
+            Objects.requireNonNull(name);
+            if (values.length == 0) {
+                throw new IllegalArgumentException("Tag " + name + " needs at least one value.");
+            }
+            tags.put(name, List.of(values));
+            return this;
+        }
+    }
+}
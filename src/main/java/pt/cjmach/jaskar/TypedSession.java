@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.sun.jna.Pointer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import pt.cjmach.jaskar.lib.ByteBuffer;
+import pt.cjmach.jaskar.lib.EntryOperation;
+import pt.cjmach.jaskar.lib.NativeOutputStream;
+import pt.cjmach.jaskar.lib.SecretBuffer;
+
+/**
+ * Reads and writes the records of one category of a session as objects. Values
+ * are encoded straight into pooled native memory and decoded straight from the
+ * native value buffer.
+ *
+ * @author cmachado
+ * @param <T> the type of the values.
+ * @see Session#typed(java.lang.String, pt.cjmach.jaskar.ValueCodec)
+ */
+public class TypedSession<T> {
+
+    private static final InputStream EMPTY = InputStream.nullInputStream();
+
+    private final Session session;
+    private final String category;
+    private final ValueCodec<T> codec;
+
+    /**
+     *
+     * @param session
+     * @param category
+     * @param codec
+     */
+    TypedSession(Session session, String category, ValueCodec<T> codec) {
+        this.session = Objects.requireNonNull(session);
+        this.category = Objects.requireNonNull(category);
+        this.codec = Objects.requireNonNull(codec);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public ValueCodec<T> getCodec() {
+        return codec;
+    }
+
+    /**
+     * Fetch a record and decode its value.
+     *
+     * @param name
+     * @param forUpdate
+     * @return the value, or {@code null} if there is no such record.
+     * @throws AskarException
+     */
+    public T fetch(String name, boolean forUpdate) throws AskarException {
+        try (Entry entry = session.fetch(category, name, forUpdate)) {
+            if (entry == null) {
+                return null;
+            }
+            return decode(entry);
+        }
+    }
+
+    /**
+     * Decode the value of a record.
+     *
+     * @param entry a record of any category.
+     * @return
+     * @throws AskarException
+     */
+    public T decode(Entry entry) throws AskarException {
+        try (SecretBuffer buffer = entry.getRawValue()) {
+            InputStream in = buffer.data == Pointer.NULL ? EMPTY
+                    : new ByteBufferBackedInputStream(buffer.data.getByteBuffer(0, buffer.len));
+            return codec.decode(in);
+        } catch (IOException ex) {
+            throw new AskarException(ex);
+        }
+    }
+
+    /**
+     * Encode a value and insert it as a new record.
+     *
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @throws AskarException
+     */
+    public void insert(String name, T value, String tags, long expiryMs) throws AskarException {
+        update(EntryOperation.INSERT, name, value, tags, expiryMs);
+    }
+
+    /**
+     * Encode a value and replace the value and tags of a record with it.
+     *
+     * @param name
+     * @param value
+     * @param tags
+     * @param expiryMs
+     * @throws AskarException
+     */
+    public void replace(String name, T value, String tags, long expiryMs) throws AskarException {
+        update(EntryOperation.REPLACE, name, value, tags, expiryMs);
+    }
+
+    /**
+     * Remove a record.
+     *
+     * @param name
+     * @throws AskarException
+     */
+    public void remove(String name) throws AskarException {
+        session.remove(category, name);
+    }
+
+    private void update(EntryOperation operation, String name, T value, String tags, long expiryMs) throws AskarException {
+        Objects.requireNonNull(name);
+        AsyncSession async = session.async();
+        try (NativeOutputStream out = new NativeOutputStream()) {
+            codec.encode(value, out);
+            try (ByteBuffer.ByValue buffer = out.toByteBuffer()) {
+                session.join(async.update(operation, category, name, tags, buffer, expiryMs));
+            }
+        } catch (IOException ex) {
+            throw new AskarException(ex);
+        }
+    }
+}
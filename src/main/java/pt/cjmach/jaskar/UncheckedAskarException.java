@@ -0,0 +1,46 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.util.Objects;
+
+/**
+ * Wraps an {@link AskarException} with an unchecked exception, for use where
+ * checked exceptions cannot be thrown, such as iterators and streams.
+ *
+ * @author cmachado
+ */
+public class UncheckedAskarException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     *
+     * @param cause
+     */
+    public UncheckedAskarException(AskarException cause) {
+        super(Objects.requireNonNull(cause));
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public synchronized AskarException getCause() {
+        return (AskarException) super.getCause();
+    }
+}
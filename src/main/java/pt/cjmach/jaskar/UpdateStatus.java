@@ -0,0 +1,88 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import pt.cjmach.jaskar.lib.ErrorCode;
+
+/**
+ * Outcome of a record update that is reported as a result rather than as an
+ * {@link AskarException}, for conflicts that are part of normal operation.
+ * Statuses are mapped from the {@link ErrorCode} alone, so the detailed error
+ * message is never fetched and no stack trace is filled in.
+ * <p>
+ * A status carries no message, and none can be fetched on demand afterwards:
+ * the library keeps only the last error of the whole process, which any later
+ * failing call on any thread replaces. Use the throwing variants, such as
+ * {@link Session#insert(String, String, String, byte[], long)}, when the
+ * message is needed, as they read it on the callback thread as soon as the
+ * library sets it.
+ *
+ * @author cmachado
+ * @see AsyncSession#tryInsert(String, String, String, byte[], long)
+ */
+public enum UpdateStatus {
+
+    /**
+     * The update was applied.
+     */
+    OK,
+
+    /**
+     * An insert was rejected as a record with the same category and name
+     * already exists.
+     */
+    DUPLICATE,
+
+    /**
+     * A replace or remove was rejected as there is no such record.
+     */
+    NOT_FOUND,
+
+    /**
+     * The store backend was too busy to handle the update, which may be
+     * retried.
+     */
+    BUSY;
+
+    /**
+     *
+     * @return whether the update was applied.
+     */
+    public boolean isOk() {
+        return this == OK;
+    }
+
+    /**
+     *
+     * @param errorCode
+     * @return the status for 'errorCode', or {@code null} if it is not an
+     * expected outcome of an update.
+     */
+    static UpdateStatus of(ErrorCode errorCode) {
+        switch (errorCode) {
+            case SUCCESS:
+                return OK;
+            case DUPLICATE:
+                return DUPLICATE;
+            case NOT_FOUND:
+                return NOT_FOUND;
+            case BUSY:
+                return BUSY;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts record values to and from objects. Values are written to and read
+ * from streams over native memory, so no intermediate byte array is needed.
+ *
+ * @author cmachado
+ * @param <T> the type of the values.
+ * @see TypedSession
+ * @see JacksonCodecs
+ */
+public interface ValueCodec<T> {
+
+    /**
+     *
+     * @param value
+     * @param out the stream to write to, which must be left open.
+     * @throws IOException
+     */
+    void encode(T value, OutputStream out) throws IOException;
+
+    /**
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    T decode(InputStream in) throws IOException;
+}
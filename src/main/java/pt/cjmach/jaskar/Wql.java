@@ -0,0 +1,381 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.sun.jna.Memory;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import pt.cjmach.jaskar.lib.AskarLibrary;
+
+/**
+ * Immutable tag filter, in the wallet query language. Filters are built with
+ * the static factories and passed to any method taking a 'tagFilter' through
+ * {@link #toJson()}.
+ * <p>
+ * Filters are interned in a bounded cache keyed by their operator and
+ * operands, so building a cached filter again returns the same instance
+ * without building or escaping its JSON. Each filter also keeps its JSON
+ * encoded in native memory, which is handed to the library in place of the
+ * string whenever a method receives the JSON of a cached filter, so hot
+ * queries are only marshalled once. The cache admits filters by how often
+ * they are used, so a stream of one-off filters, like lookups by a unique id,
+ * does not evict the hot ones.
+ * <p>
+ * Range ('gt', 'gte', 'lt', 'lte') and 'like' filters only apply to plaintext
+ * tags, whose name starts with {@value Tags#PLAINTEXT_PREFIX}.
+ * <p>
+ * Filters can also be evaluated in Java, over records already in memory, with
+ * {@link #toPredicate()}.
+ *
+ * @author cmachado
+ */
+public final class Wql {
+
+    /**
+     * Maximum number of filters kept in the cache.
+     */
+    public static final int CACHE_SIZE = 1024;
+
+    private static final BoundedCache<Shape, Wql> CACHE = new BoundedCache<>(CACHE_SIZE, 1);
+    private static final BoundedCache<String, Wql> BY_JSON = new BoundedCache<>(CACHE_SIZE, 1);
+    private static final Wql ALL = new Wql("{}");
+
+    private final String json;
+    private volatile Memory encoded;
+    private volatile Predicate<Tags> predicate;
+
+    private Wql(String json) {
+        this.json = json;
+    }
+
+    /**
+     *
+     * @return a filter that matches every record.
+     */
+    public static Wql all() {
+        return ALL;
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return a filter on tags equal to 'value'.
+     */
+    public static Wql eq(String name, String value) {
+        return intern(new Shape("$eq", name, value), () -> "{" + quote(name) + ":" + quote(value) + "}");
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return a filter on tags present and not equal to 'value'.
+     */
+    public static Wql neq(String name, String value) {
+        return compare("$neq", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Wql gt(String name, String value) {
+        return compare("$gt", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Wql gte(String name, String value) {
+        return compare("$gte", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Wql lt(String name, String value) {
+        return compare("$lt", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param value
+     * @return
+     */
+    public static Wql lte(String name, String value) {
+        return compare("$lte", name, value);
+    }
+
+    /**
+     *
+     * @param name
+     * @param pattern an SQL 'LIKE' pattern, with '%' and '_' wildcards.
+     * @return
+     */
+    public static Wql like(String name, String pattern) {
+        return compare("$like", name, pattern);
+    }
+
+    /**
+     *
+     * @param name
+     * @param values
+     * @return a filter on tags equal to any of 'values'.
+     */
+    public static Wql in(String name, String... values) {
+        return intern(new Shape("$in", name, (Object[]) values.clone()), () -> {
+            StringBuilder builder = new StringBuilder("{").append(quote(name)).append(":{\"$in\":[");
+            appendQuoted(builder, values);
+            return builder.append("]}}").toString();
+        });
+    }
+
+    /**
+     *
+     * @param names
+     * @return a filter on records having all the given tags.
+     */
+    public static Wql exist(String... names) {
+        return intern(new Shape("$exist", null, (Object[]) names.clone()), () -> {
+            StringBuilder builder = new StringBuilder("{\"$exist\":[");
+            appendQuoted(builder, names);
+            return builder.append("]}").toString();
+        });
+    }
+
+    /**
+     *
+     * @param filters
+     * @return a filter matching all of 'filters', or every record if empty.
+     */
+    public static Wql and(Wql... filters) {
+        return combine("$and", filters);
+    }
+
+    /**
+     *
+     * @param filters
+     * @return a filter matching any of 'filters', or no record if empty.
+     */
+    public static Wql or(Wql... filters) {
+        return combine("$or", filters);
+    }
+
+    /**
+     *
+     * @param filter
+     * @return
+     */
+    public static Wql not(Wql filter) {
+        return intern(new Shape("$not", null, filter), () -> "{\"$not\":" + filter.json + "}");
+    }
+
+    /**
+     *
+     * @return the filter in the JSON form used by the library.
+     */
+    public String toJson() {
+        return json;
+    }
+
+    /**
+     * Compiles the filter for evaluation in Java, with the same semantics as
+     * the library queries. The predicate is compiled once per filter.
+     *
+     * @return a predicate that is {@code true} for the tags matched by this
+     * filter.
+     * @throws IllegalArgumentException if a range or 'like' filter applies to
+     * an encrypted tag.
+     */
+    public Predicate<Tags> toPredicate() {
+        Predicate<Tags> result = predicate;
+        if (result == null) {
+            result = WqlEvaluator.compile(json);
+            predicate = result;
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param tags
+     * @return whether this filter matches 'tags'.
+     */
+    public boolean matches(Tags tags) {
+        return toPredicate().test(tags);
+    }
+
+    /**
+     * Compiles a filter in JSON form for evaluation in Java, reusing the
+     * compiled form of a cached filter.
+     *
+     * @param tagFilter the filter, or {@code null} to match every record.
+     * @return
+     * @throws IllegalArgumentException if the filter is not valid.
+     * @see #toPredicate()
+     */
+    public static Predicate<Tags> compile(String tagFilter) {
+        Wql filter = lookup(tagFilter);
+        return filter != null ? filter.toPredicate() : WqlEvaluator.compile(tagFilter);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || (obj instanceof Wql && json.equals(((Wql) obj).json));
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+
+    /**
+     * Looks up the native form of a cached filter.
+     *
+     * @param tagFilter
+     * @return the filter as NUL terminated JSON in native memory, or
+     * {@code null} if it is not a cached filter. The memory stays valid while
+     * the result is reachable.
+     */
+    static Memory encoded(String tagFilter) {
+        Wql filter = lookup(tagFilter);
+        return filter == null ? null : filter.encode();
+    }
+
+    private static Wql lookup(String tagFilter) {
+        if (tagFilter == null) {
+            return null;
+        }
+        return ALL.json.equals(tagFilter) ? ALL : BY_JSON.get(tagFilter);
+    }
+
+    private Memory encode() {
+        Memory result = encoded;
+        if (result == null) {
+            byte[] bytes = json.getBytes(AskarLibrary.DEFAULT_CHARSET);
+            result = new Memory(bytes.length + 1);
+            result.write(0, bytes, 0, bytes.length);
+            result.setByte(bytes.length, (byte) 0);
+            encoded = result;
+        }
+        return result;
+    }
+
+    private static Wql compare(String operator, String name, String value) {
+        return intern(new Shape(operator, name, value),
+                () -> "{" + quote(name) + ":{\"" + operator + "\":" + quote(value) + "}}");
+    }
+
+    private static Wql combine(String operator, Wql... filters) {
+        return intern(new Shape(operator, null, (Object[]) filters.clone()), () -> {
+            StringBuilder builder = new StringBuilder("{\"").append(operator).append("\":[");
+            for (int i = 0; i < filters.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(filters[i].json);
+            }
+            return builder.append("]}").toString();
+        });
+    }
+
+    /**
+     * Looks up a filter by its shape, only building its JSON if it is not
+     * cached.
+     *
+     * @param shape
+     * @param json
+     * @return
+     */
+    private static Wql intern(Shape shape, Supplier<String> json) {
+        Wql cached = CACHE.get(shape);
+        if (cached != null) {
+            return cached;
+        }
+        Wql created = new Wql(json.get());
+        CACHE.put(shape, created, 1, BoundedCache.NO_EXPIRY, null);
+        BY_JSON.put(created.json, created, 1, BoundedCache.NO_EXPIRY, null);
+        return created;
+    }
+
+    private static String quote(String value) {
+        Objects.requireNonNull(value);
+        return "\"" + new String(JsonStringEncoder.getInstance().quoteAsString(value)) + "\"";
+    }
+
+    private static void appendQuoted(StringBuilder builder, String... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(quote(values[i]));
+        }
+    }
+
+    /**
+     * Cache key of a filter: its operator and operands, compared by value.
+     */
+    private static final class Shape {
+
+        private final String operator;
+        private final String name;
+        private final Object[] operands;
+        private final int hash;
+
+        Shape(String operator, String name, Object... operands) {
+            this.operator = operator;
+            this.name = name;
+            this.operands = operands;
+            this.hash = 31 * (31 * operator.hashCode() + Objects.hashCode(name)) + Arrays.hashCode(operands);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) obj;
+            return hash == other.hash && operator.equals(other.operator)
+                    && Objects.equals(name, other.name) && Arrays.equals(operands, other.operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles tag filters in the wallet query language into predicates over
+ * {@link Tags}, with the semantics of the library queries:
+ * <ul>
+ * <li>the fields of an object are all required to match, so '{}' matches
+ * every record;</li>
+ * <li>a tag with several values matches a comparison if any of its values
+ * does, and never matches if it is missing, also for '$neq';</li>
+ * <li>an empty '$or' matches no record;</li>
+ * <li>range and '$like' comparisons are only allowed on plaintext tags, and
+ * compare strings by code point, as the backends compare UTF-8 text.</li>
+ * </ul>
+ * '$like' patterns are matched case sensitively, as on PostgreSQL. SQLite
+ * ignores the case of ASCII letters.
+ *
+ * @author cmachado
+ * @see Wql#toPredicate()
+ */
+final class WqlEvaluator {
+
+    private static final ObjectMapper MAPPER = new JsonMapper();
+    private static final Predicate<Tags> ALL = tags -> true;
+    private static final Predicate<Tags> NONE = tags -> false;
+
+    private WqlEvaluator() {
+    }
+
+    /**
+     *
+     * @param tagFilter
+     * @return a predicate that is {@code true} for the tags matched by
+     * 'tagFilter'. A {@code null} filter matches every record.
+     * @throws IllegalArgumentException if the filter is not valid.
+     */
+    static Predicate<Tags> compile(String tagFilter) {
+        if (tagFilter == null) {
+            return ALL;
+        }
+        JsonNode node;
+        try {
+            node = MAPPER.readTree(tagFilter);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Invalid tag filter: " + tagFilter, ex);
+        }
+        return compile(node);
+    }
+
+    private static Predicate<Tags> compile(JsonNode node) {
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Tag filter must be a JSON object: " + node);
+        }
+        List<Predicate<Tags>> clauses = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            String name = field.getKey();
+            JsonNode value = field.getValue();
+            switch (name) {
+                case "$and":
+                    clauses.add(and(compileAll(value)));
+                    break;
+                case "$or":
+                    clauses.add(or(compileAll(value)));
+                    break;
+                case "$not":
+                    clauses.add(compile(value).negate());
+                    break;
+                case "$exist":
+                    clauses.add(exist(strings(value)));
+                    break;
+                default:
+                    if (name.startsWith("$")) {
+                        throw new IllegalArgumentException("Unsupported tag filter operator: " + name);
+                    }
+                    clauses.add(compare(name, value));
+            }
+        }
+        return and(clauses);
+    }
+
+    private static List<Predicate<Tags>> compileAll(JsonNode node) {
+        if (!node.isArray()) {
+            throw new IllegalArgumentException("Expected an array of tag filters: " + node);
+        }
+        List<Predicate<Tags>> result = new ArrayList<>(node.size());
+        for (JsonNode element : node) {
+            result.add(compile(element));
+        }
+        return result;
+    }
+
+    private static Predicate<Tags> compare(String name, JsonNode value) {
+        if (value.isTextual()) {
+            String expected = value.textValue();
+            return anyValue(name, expected::equals);
+        }
+        if (!value.isObject() || value.size() != 1) {
+            throw new IllegalArgumentException("Invalid comparison on tag " + name + ": " + value);
+        }
+        Map.Entry<String, JsonNode> comparison = value.properties().iterator().next();
+        String operator = comparison.getKey();
+        JsonNode operand = comparison.getValue();
+        switch (operator) {
+            case "$neq":
+                String unexpected = text(operand);
+                return anyValue(name, v -> !v.equals(unexpected));
+            case "$gt":
+                return range(name, operator, operand, (v, bound) -> compareCodePoints(v, bound) > 0);
+            case "$gte":
+                return range(name, operator, operand, (v, bound) -> compareCodePoints(v, bound) >= 0);
+            case "$lt":
+                return range(name, operator, operand, (v, bound) -> compareCodePoints(v, bound) < 0);
+            case "$lte":
+                return range(name, operator, operand, (v, bound) -> compareCodePoints(v, bound) <= 0);
+            case "$like":
+                requirePlaintext(name, operator);
+                Pattern pattern = likePattern(text(operand));
+                return anyValue(name, v -> pattern.matcher(v).matches());
+            case "$in":
+                Set<String> values = new HashSet<>(strings(operand));
+                return anyValue(name, values::contains);
+            default:
+                throw new IllegalArgumentException("Unsupported tag filter operator: " + operator);
+        }
+    }
+
+    private static Predicate<Tags> range(String name, String operator, JsonNode operand, BiPredicate<String, String> test) {
+        requirePlaintext(name, operator);
+        String bound = text(operand);
+        return anyValue(name, v -> test.test(v, bound));
+    }
+
+    private static Predicate<Tags> anyValue(String name, Predicate<String> test) {
+        return tags -> {
+            for (String value : tags.getAll(name)) {
+                if (test.test(value)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private static Predicate<Tags> exist(List<String> names) {
+        return tags -> {
+            for (String name : names) {
+                if (!tags.contains(name)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static Predicate<Tags> and(List<Predicate<Tags>> clauses) {
+        switch (clauses.size()) {
+            case 0:
+                return ALL;
+            case 1:
+                return clauses.get(0);
+            default:
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                Predicate<Tags>[] array = clauses.toArray(new Predicate[0]);
+                return tags -> {
+                    for (Predicate<Tags> clause : array) {
+                        if (!clause.test(tags)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+        }
+    }
+
+    private static Predicate<Tags> or(List<Predicate<Tags>> clauses) {
+        switch (clauses.size()) {
+            case 0:
+                return NONE;
+            case 1:
+                return clauses.get(0);
+            default:
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                Predicate<Tags>[] array = clauses.toArray(new Predicate[0]);
+                return tags -> {
+                    for (Predicate<Tags> clause : array) {
+                        if (clause.test(tags)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+        }
+    }
+
+    private static void requirePlaintext(String name, String operator) {
+        if (!Tags.isPlaintext(name)) {
+            throw new IllegalArgumentException("Operator " + operator + " only applies to plaintext tags: " + name);
+        }
+    }
+
+    private static String text(JsonNode node) {
+        if (!node.isTextual()) {
+            throw new IllegalArgumentException("Tag filter values must be strings: " + node);
+        }
+        return node.textValue();
+    }
+
+    private static List<String> strings(JsonNode node) {
+        List<String> result = new ArrayList<>();
+        if (node.isArray()) {
+            for (JsonNode element : node) {
+                result.add(text(element));
+            }
+        } else {
+            result.add(text(node));
+        }
+        return result;
+    }
+
+    /**
+     * Translates an SQL 'LIKE' pattern, where '%' matches any run of
+     * characters and '_' any single character.
+     */
+    private static Pattern likePattern(String like) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import pt.cjmach.jaskar.lib.EntryOperation;
+
+/**
+ * Queues record updates from any number of threads and writes them to the
+ * store in groups, each in a single transaction, so the cost of a commit is
+ * shared by every update of the group. A group is committed once it reaches
+ * 'maxBatchSize' updates, or once its oldest update has waited 'maxDelay'.
+ * Only one group is written at a time, while the next one fills up.
+ * <p>
+ * Each update returns a future completed when its group is committed. If some
+ * updates of a group fail, the transaction is rolled back and written again in
+ * a new transaction. Updates rejected for their own content, like a duplicate
+ * insert or the removal of a missing record, fail with the cause and are left
+ * out of the retry. Other failures, which may only be a side effect of the
+ * failed transaction, are retried up to {@link #MAX_ATTEMPTS} times. Updates to
+ * the same record are applied in the order they were submitted.
+ *
+ * @author cmachado
+ */
+public class WriteBehindStore implements Closeable {
+
+    /**
+     * Default maximum number of updates in a group.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    /**
+     * Default maximum time an update waits for its group to fill up.
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(5);
+    /**
+     * Number of times a group is written while none of its updates is
+     * rejected for its own content, before every update in it fails.
+     */
+    public static final int MAX_ATTEMPTS = 3;
+
+    private final Store store;
+    private final String profile;
+    private final int maxBatchSize;
+    private final int maxPending;
+    private final long maxDelayNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private final List<Update> queue = new ArrayList<>();
+    private final Thread writer;
+    private long firstQueuedAt;
+    private long submitted;
+    private long completed;
+    private long flushUpTo;
+    private boolean closed;
+
+    /**
+     *
+     * @param store
+     * @param profile the profile, or {@code null} for the default one.
+     * @throws AskarException
+     */
+    public WriteBehindStore(Store store, String profile) throws AskarException {
+        this(store, profile, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     *
+     * @param store
+     * @param profile the profile, or {@code null} for the default one.
+     * @param maxBatchSize the number of updates that triggers a commit. Up to
+     * 16 times as many updates may be queued before callers are blocked.
+     * @param maxDelay the time after which a group is committed even if not
+     * full.
+     * @throws AskarException
+     */
+    public WriteBehindStore(Store store, String profile, int maxBatchSize, Duration maxDelay) throws AskarException {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be positive.");
+        }
+        this.store = Objects.requireNonNull(store);
+        this.profile = profile != null ? profile : store.getDefaultProfile();
+        this.maxBatchSize = maxBatchSize;
+        this.maxPending = maxBatchSize * 16;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.writer = new Thread(this::run, "jaskar-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue the insertion of a new record.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return a future completed once the record is committed.
+     * @throws AskarException if interrupted while waiting for room in the
+     * queue.
+     */
+    public CompletableFuture<Void> insert(String category, String name, String tags, byte[] value, long expiryMs) throws AskarException {
+        return submit(new Update(EntryOperation.INSERT, category, name, tags, value, expiryMs));
+    }
+
+    /**
+     * Queue the replacement of the value and tags of a record.
+     *
+     * @param category
+     * @param name
+     * @param tags
+     * @param value
+     * @param expiryMs
+     * @return a future completed once the record is committed.
+     * @throws AskarException if interrupted while waiting for room in the
+     * queue.
+     */
+    public CompletableFuture<Void> replace(String category, String name, String tags, byte[] value, long expiryMs) throws AskarException {
+        return submit(new Update(EntryOperation.REPLACE, category, name, tags, value, expiryMs));
+    }
+
+    /**
+     * Queue the removal of a record.
+     *
+     * @param category
+     * @param name
+     * @return a future completed once the removal is committed.
+     * @throws AskarException if interrupted while waiting for room in the
+     * queue.
+     */
+    public CompletableFuture<Void> remove(String category, String name) throws AskarException {
+        return submit(new Update(EntryOperation.REMOVE, category, name, null, null, 0));
+    }
+
+    /**
+     * Commit every queued update now, and wait for them to complete.
+     *
+     * @throws AskarException if interrupted.
+     */
+    public void flush() throws AskarException {
+        lock.lock();
+        try {
+            long target = submitted;
+            flushUpTo = Math.max(flushUpTo, target);
+            ready.signal();
+            while (completed < target) {
+                written.await();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AskarException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Commit every queued update and stop the writer thread. The store itself
+     * is left open.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            ready.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    private CompletableFuture<Void> submit(Update update) throws AskarException {
+        lock.lock();
+        try {
+            while (queue.size() >= maxPending && !closed) {
+                notFull.await();
+            }
+            if (closed) {
+                throw new IllegalStateException("Cannot update with a closed write-behind store.");
+            }
+            if (queue.isEmpty()) {
+                firstQueuedAt = System.nanoTime();
+            }
+            queue.add(update);
+            submitted++;
+            if (queue.size() >= maxBatchSize || queue.size() == 1) {
+                ready.signal();
+            }
+            return update.future;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AskarException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a group to fill up or time out, then writes it.
+     */
+    private void run() {
+        while (true) {
+            List<Update> group;
+            lock.lock();
+            try {
+                while (true) {
+                    if (queue.isEmpty()) {
+                        if (closed) {
+                            return;
+                        }
+                        ready.awaitUninterruptibly();
+                        continue;
+                    }
+                    long waited = System.nanoTime() - firstQueuedAt;
+                    if (closed || queue.size() >= maxBatchSize || waited >= maxDelayNanos || flushUpTo > completed) {
+                        break;
+                    }
+                    try {
+                        ready.awaitNanos(maxDelayNanos - waited);
+                    } catch (InterruptedException ex) {
+                        // keeps waiting, the thread only stops once closed and drained.
+                    }
+                }
+                int size = Math.min(queue.size(), maxBatchSize);
+                List<Update> head = queue.subList(0, size);
+                group = new ArrayList<>(head);
+                head.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            write(group);
+            lock.lock();
+            try {
+                completed += group.size();
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes a group in one transaction, retrying without the updates that
+     * were rejected for their own content.
+     */
+    private void write(List<Update> group) {
+        List<Update> remaining = group;
+        int attempts = 0;
+        while (!remaining.isEmpty()) {
+            try (Session session = store.openSession(profile, true)) {
+                SessionBatch batch = session.batch();
+                for (Update update : remaining) {
+                    update.addTo(batch);
+                }
+                SessionBatch.Result result = batch.execute();
+                if (result.isSuccess()) {
+                    session.commit();
+                    for (Update update : remaining) {
+                        update.future.complete(null);
+                    }
+                    return;
+                }
+                session.rollback();
+                Set<Integer> rejected = new HashSet<>();
+                for (SessionBatch.Failure failure : result.getFailures()) {
+                    if (isRejection(failure.getCause())) {
+                        rejected.add(failure.getIndex());
+                        remaining.get(failure.getIndex()).future.completeExceptionally(failure.getCause());
+                    }
+                }
+                if (rejected.isEmpty() && ++attempts >= MAX_ATTEMPTS) {
+                    fail(remaining, result.getFailures());
+                    return;
+                }
+                List<Update> retry = new ArrayList<>(remaining.size() - rejected.size());
+                for (int i = 0; i < remaining.size(); i++) {
+                    if (!rejected.contains(i)) {
+                        retry.add(remaining.get(i));
+                    }
+                }
+                remaining = retry;
+            } catch (AskarException | IOException | RuntimeException ex) {
+                for (Update update : remaining) {
+                    update.future.completeExceptionally(ex);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param cause
+     * @return whether the update would fail again in any transaction.
+     */
+    private static boolean isRejection(AskarException cause) {
+        switch (cause.getErrorCode()) {
+            case DUPLICATE:
+            case NOT_FOUND:
+            case INPUT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Fails every update of a group that could not be written, with its own
+     * failure or else the first failure of the group.
+     */
+    private static void fail(List<Update> remaining, List<SessionBatch.Failure> failures) {
+        AskarException first = failures.get(0).getCause();
+        AskarException[] causes = new AskarException[remaining.size()];
+        for (SessionBatch.Failure failure : failures) {
+            causes[failure.getIndex()] = failure.getCause();
+        }
+        for (int i = 0; i < remaining.size(); i++) {
+            remaining.get(i).future.completeExceptionally(causes[i] != null ? causes[i] : first);
+        }
+    }
+
+    /**
+     * A queued update, with the future of its caller.
+     */
+    private static final class Update {
+
+        final EntryOperation operation;
+        final String category;
+        final String name;
+        final String tags;
+        final byte[] value;
+        final long expiryMs;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Update(EntryOperation operation, String category, String name, String tags, byte[] value, long expiryMs) {
+            this.operation = operation;
+            this.category = Objects.requireNonNull(category);
+            this.name = Objects.requireNonNull(name);
+            this.tags = tags;
+            this.value = value;
+            this.expiryMs = expiryMs;
+        }
+
+        void addTo(SessionBatch batch) {
+            switch (operation) {
+                case INSERT:
+                    batch.insert(category, name, tags, value, expiryMs);
+                    break;
+                case REPLACE:
+                    batch.replace(category, name, tags, value, expiryMs);
+                    break;
+                default:
+                    batch.remove(category, name);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar;
+
+import pt.cjmach.jaskar.lib.EntryOperation;
+
+/**
+ * Receives the record writes done through the sessions of a store, once they
+ * have taken effect: right away outside a transaction, or when the
+ * transaction is committed. Writes of rolled back transactions are never
+ * reported.
+ * <p>
+ * Listeners are called from the library callback thread, so they must not
+ * block.
+ *
+ * @author cmachado
+ * @see Store#addWriteListener(pt.cjmach.jaskar.WriteListener)
+ */
+public interface WriteListener {
+
+    /**
+     * A record was inserted, replaced or removed.
+     *
+     * @param profile the profile of the session, or {@code null} if it was
+     * opened on the default profile without naming it.
+     * @param operation
+     * @param category
+     * @param name
+     * @param expiryMs the expiry given to the record, or a value not greater
+     * than zero if it does not expire.
+     */
+    void entryWritten(String profile, EntryOperation operation, String category, String name, long expiryMs);
+
+    /**
+     * Every record of a category matching a filter was removed.
+     *
+     * @param profile the profile of the session, or {@code null} if it was
+     * opened on the default profile without naming it.
+     * @param category
+     * @param tagFilter
+     */
+    void entriesRemoved(String profile, String category, String tagFilter);
+}
@@ -15,44 +15,115 @@
  */
 package pt.cjmach.jaskar.lib;
 
-import java.util.concurrent.CountDownLatch;
+import com.sun.jna.CallbackThreadInitializer;
+import com.sun.jna.Native;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
+ * Completion of an asynchronous library call. The result is published through
+ * a {@link CompletableFuture} that is completed directly from the native
+ * callback thread.
+ * <p>
+ * The library is always handed one of the shared callbacks ({@link #BASIC},
+ * {@link #POINTER}, ...) together with {@link #getId()}. The shared callback
+ * looks up the pending operation by id, so any number of operations may be in
+ * flight at once, from one or many threads.
  *
  * @author cmachado
+ * @param <T> the type of the result passed to the native callback.
  */
-public class AskarCallback {
+public abstract class AskarCallback<T> {
 
-    private final CountDownLatch latch;
+    private static final PendingTable PENDING = new PendingTable();
+
+    /**
+     *
+     */
+    public static final AskarLibrary.BasicCallback BASIC = new BasicCallback();
+
+    /**
+     *
+     */
+    public static final AskarLibrary.ByteCallback BYTE = new ByteCallback();
+
+    /**
+     *
+     */
+    public static final AskarLibrary.LongCallback LONG = new LongCallback();
+
+    /**
+     *
+     */
+    public static final AskarLibrary.PointerCallback POINTER = new PointerCallback();
+
+    /**
+     *
+     */
+    public static final AskarLibrary.SizeTCallback SIZE_T = new SizeTCallback();
+
+    /**
+     *
+     */
+    public static final AskarLibrary.StringCallback STRING = new StringCallback();
+
+    static {
+        // keep the library worker threads attached to the JVM between calls.
+        CallbackThreadInitializer initializer = new CallbackThreadInitializer(true, false, "askar-callback");
+        Native.setCallbackThreadInitializer(BASIC, initializer);
+        Native.setCallbackThreadInitializer(BYTE, initializer);
+        Native.setCallbackThreadInitializer(LONG, initializer);
+        Native.setCallbackThreadInitializer(POINTER, initializer);
+        Native.setCallbackThreadInitializer(SIZE_T, initializer);
+        Native.setCallbackThreadInitializer(STRING, initializer);
+    }
+
+    private final CompletableFuture<T> future;
     private final long id;
 
     /**
      *
      */
-    protected ErrorCode errorCode;
+    protected volatile ErrorCode errorCode;
 
     /**
      *
      */
     protected AskarCallback() {
-        latch = new CountDownLatch(1);
-        id = Thread.currentThread().getId();
+        future = new CompletableFuture<>();
+        id = PENDING.nextId();
         errorCode = ErrorCode.CUSTOM;
+        PENDING.put(id, this);
     }
-    
+
     /**
      *
      * @throws InterruptedException
      */
     public void await() throws InterruptedException {
-        latch.await();
+        try {
+            future.get();
+        } catch (ExecutionException ex) {
+            // never completed exceptionally.
+        }
+    }
+
+    /**
+     * Discards this callback when the library call was rejected and the
+     * callback will never be invoked.
+     */
+    public void release() {
+        PENDING.remove(id);
     }
 
     /**
      *
+     * @param err
+     * @param result
      */
-    protected void countDown() {
-        latch.countDown();
+    protected void complete(ErrorCode err, T result) {
+        this.errorCode = err;
+        future.complete(result);
     }
 
     /**
@@ -72,178 +143,162 @@ public class AskarCallback {
     }
 
     /**
+     * Gets the future completed when the library invokes this callback. The
+     * future always completes normally, the outcome of the call must be
+     * checked with {@link #getErrorCode()}.
      *
+     * @return
      */
-    public static class Basic extends AskarCallback implements AskarLibrary.BasicCallback {
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
 
-        /**
-         *
-         * @param cb_id
-         * @param err
-         */
-        @Override
-        public void invoke(long cb_id, ErrorCode err) {
-            assert cb_id == getId();
-            this.errorCode = err;
-            countDown();
+    /**
+     * Routes a native completion to the operation registered with the given
+     * id. Completions for unknown ids are dropped.
+     *
+     * @param <T>
+     * @param cbId
+     * @param err
+     * @param result
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void dispatch(long cbId, ErrorCode err, T result) {
+        AskarCallback<T> op = (AskarCallback<T>) PENDING.remove(cbId);
+        if (op != null) {
+            op.complete(err, result);
         }
     }
 
     /**
      *
      */
-    public static class Byte extends AskarCallback implements AskarLibrary.ByteCallback {
+    public static class Basic extends AskarCallback<Void> {
+    }
 
-        private byte byteResult = -1;
+    /**
+     *
+     */
+    public static class Byte extends AskarCallback<java.lang.Byte> {
 
         /**
          *
          * @return
          */
         public byte getByte() {
-            return byteResult;
+            return getFuture().getNow((byte) -1);
         }
-        
+
         /**
          *
          * @return
          */
         public boolean getBoolean() {
-            return byteResult != 0;
-        }
-
-        /**
-         *
-         * @param cb_id
-         * @param err
-         * @param result
-         */
-        @Override
-        public void invoke(long cb_id, ErrorCode err, byte result) {
-            assert cb_id == getId();
-            this.errorCode = err;
-            this.byteResult = result;
-            countDown();
+            return getByte() != 0;
         }
     }
 
     /**
      *
      */
-    public static class Long extends AskarCallback implements AskarLibrary.LongCallback {
-
-        private long longResult = -1;
+    public static class Long extends AskarCallback<java.lang.Long> {
 
         /**
          *
          * @return
          */
         public long getLong() {
-            return longResult;
-        }
-
-        /**
-         *
-         * @param cb_id
-         * @param err
-         * @param result
-         */
-        @Override
-        public void invoke(long cb_id, ErrorCode err, long result) {
-            assert cb_id == getId();
-            this.errorCode = err;
-            this.longResult = result;
-            countDown();
+            return getFuture().getNow(-1L);
         }
     }
 
     /**
      *
      */
-    public static class Pointer extends AskarCallback implements AskarLibrary.PointerCallback {
-
-        private com.sun.jna.Pointer pointerResult = com.sun.jna.Pointer.NULL;
-
-        /**
-         *
-         * @param cb_id
-         * @param err
-         * @param result
-         */
-        @Override
-        public void invoke(long cb_id, ErrorCode err, com.sun.jna.Pointer result) {
-            assert cb_id == getId();
-            this.errorCode = err;
-            this.pointerResult = result;
-            countDown();
-        }
+    public static class Pointer extends AskarCallback<com.sun.jna.Pointer> {
 
         /**
          *
          * @return
          */
         public com.sun.jna.Pointer getPointer() {
-            return pointerResult;
+            return getFuture().getNow(com.sun.jna.Pointer.NULL);
         }
     }
 
     /**
      *
      */
-    public static class SizeT extends AskarCallback implements AskarLibrary.SizeTCallback {
-
-        private pt.cjmach.jaskar.lib.SizeT sizeTResult;
+    public static class SizeT extends AskarCallback<pt.cjmach.jaskar.lib.SizeT> {
 
         /**
          *
          * @return
          */
         public pt.cjmach.jaskar.lib.SizeT getSizeT() {
-            return sizeTResult;
-        }
-
-        /**
-         *
-         * @param cb_id
-         * @param err
-         * @param result
-         */
-        @Override
-        public void invoke(long cb_id, ErrorCode err, pt.cjmach.jaskar.lib.SizeT result) {
-            assert cb_id == getId();
-            this.errorCode = err;
-            this.sizeTResult = result;
-            countDown();
+            return getFuture().getNow(null);
         }
     }
 
     /**
      *
      */
-    public static class String extends AskarCallback implements AskarLibrary.StringCallback {
-        private java.lang.String stringResult;
+    public static class String extends AskarCallback<java.lang.String> {
 
         /**
          *
          * @return
          */
         public java.lang.String getString() {
-            return stringResult;
+            return getFuture().getNow(null);
         }
+    }
+
+    private static class BasicCallback implements AskarLibrary.BasicCallback {
 
-        /**
-         *
-         * @param cb_id
-         * @param err
-         * @param result
-         */
         @Override
-        public void invoke(long cb_id, ErrorCode err, java.lang.String result) {
-            assert cb_id == getId();
-            this.errorCode = err;
-            this.stringResult = result;
-            countDown();
+        public void invoke(long cb_id, ErrorCode err) {
+            dispatch(cb_id, err, null);
         }
     }
 
+    private static class ByteCallback implements AskarLibrary.ByteCallback {
+
+        @Override
+        public void invoke(long cb_id, ErrorCode err, byte result) {
+            dispatch(cb_id, err, result);
+        }
+    }
+
+    private static class LongCallback implements AskarLibrary.LongCallback {
+
+        @Override
+        public void invoke(long cb_id, ErrorCode err, long result) {
+            dispatch(cb_id, err, result);
+        }
+    }
+
+    private static class PointerCallback implements AskarLibrary.PointerCallback {
+
+        @Override
+        public void invoke(long cb_id, ErrorCode err, com.sun.jna.Pointer result) {
+            dispatch(cb_id, err, result);
+        }
+    }
+
+    private static class SizeTCallback implements AskarLibrary.SizeTCallback {
+
+        @Override
+        public void invoke(long cb_id, ErrorCode err, pt.cjmach.jaskar.lib.SizeT result) {
+            dispatch(cb_id, err, result);
+        }
+    }
+
+    private static class StringCallback implements AskarLibrary.StringCallback {
+
+        @Override
+        public void invoke(long cb_id, ErrorCode err, java.lang.String result) {
+            dispatch(cb_id, err, result);
+        }
+    }
 }
@@ -570,6 +570,24 @@ public class AskarLibrary {
             String category, String tag_filter, long offset, long limit,
             String order_by, byte descending, SizeTCallback cb, long cb_id);
 
+    /**
+     *
+     * @param handle
+     * @param profile
+     * @param category
+     * @param tag_filter NUL terminated JSON in native memory.
+     * @param offset
+     * @param limit
+     * @param order_by
+     * @param descending
+     * @param cb
+     * @param cb_id
+     * @return
+     */
+    public static native ErrorCode askar_scan_start(SizeT handle, String profile,
+            String category, Pointer tag_filter, long offset, long limit,
+            String order_by, byte descending, SizeTCallback cb, long cb_id);
+
     /**
      *
      * @param handle
@@ -593,6 +611,18 @@ public class AskarLibrary {
     public static native ErrorCode askar_session_count(SizeT handle,
             String category, String tag_filter, LongCallback cb, long cb_id);
 
+    /**
+     *
+     * @param handle
+     * @param category
+     * @param tag_filter NUL terminated JSON in native memory.
+     * @param cb
+     * @param cb_id
+     * @return
+     */
+    public static native ErrorCode askar_session_count(SizeT handle,
+            String category, Pointer tag_filter, LongCallback cb, long cb_id);
+
     /**
      *
      * @param handle
@@ -624,6 +654,23 @@ public class AskarLibrary {
             String category, String tag_filter, long limit, String order_by,
             byte descending, byte for_update, PointerCallback cb, long cb_id);
 
+    /**
+     *
+     * @param handle
+     * @param category
+     * @param tag_filter NUL terminated JSON in native memory.
+     * @param limit
+     * @param order_by
+     * @param descending
+     * @param for_update
+     * @param cb
+     * @param cb_id
+     * @return
+     */
+    public static native ErrorCode askar_session_fetch_all(SizeT handle,
+            String category, Pointer tag_filter, long limit, String order_by,
+            byte descending, byte for_update, PointerCallback cb, long cb_id);
+
     /**
      *
      * @param handle
@@ -640,6 +687,22 @@ public class AskarLibrary {
             String alg, String thumbprint, String tag_filter, long limit,
             byte for_update, PointerCallback cb, long cb_id);
 
+    /**
+     *
+     * @param handle
+     * @param alg
+     * @param thumbprint
+     * @param tag_filter NUL terminated JSON in native memory.
+     * @param limit
+     * @param for_update
+     * @param cb
+     * @param cb_id
+     * @return
+     */
+    public static native ErrorCode askar_session_fetch_all_keys(SizeT handle,
+            String alg, String thumbprint, Pointer tag_filter, long limit,
+            byte for_update, PointerCallback cb, long cb_id);
+
     /**
      *
      * @param handle
@@ -681,6 +744,19 @@ public class AskarLibrary {
             String category, String tag_filter, LongCallback cb,
             long cb_id);
 
+    /**
+     *
+     * @param handle
+     * @param category
+     * @param tag_filter NUL terminated JSON in native memory.
+     * @param cb
+     * @param cb_id
+     * @return
+     */
+    public static native ErrorCode askar_session_remove_all(SizeT handle,
+            String category, Pointer tag_filter, LongCallback cb,
+            long cb_id);
+
     /**
      *
      * @param handle
@@ -722,6 +798,23 @@ public class AskarLibrary {
             EntryOperation operation, String category, String name, ByteBuffer.ByValue value,
             String tags, long expiry_ms, BasicCallback cb, long cb_id);
 
+    /**
+     *
+     * @param handle
+     * @param operation
+     * @param category
+     * @param name
+     * @param value
+     * @param tags NUL terminated JSON in native memory.
+     * @param expiry_ms
+     * @param cb
+     * @param cb_id
+     * @return
+     */
+    public static native ErrorCode askar_session_update(SizeT handle,
+            EntryOperation operation, String category, String name, ByteBuffer.ByValue value,
+            Pointer tags, long expiry_ms, BasicCallback cb, long cb_id);
+
     /**
      *
      * @param handle
@@ -16,6 +16,7 @@
 package pt.cjmach.jaskar.lib;
 
 import com.sun.jna.Memory;
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
 import com.sun.jna.Structure.FieldOrder;
@@ -40,6 +41,16 @@ public class ByteBuffer extends Structure implements Closeable {
      */
     public Pointer data;
 
+    /**
+     * Keeps the direct buffer 'data' points into reachable.
+     */
+    private java.nio.ByteBuffer direct;
+
+    /**
+     * Whether 'data' was taken from the {@link NativeArena}.
+     */
+    private boolean pooled;
+
     /**
      *
      */
@@ -60,7 +71,10 @@ public class ByteBuffer extends Structure implements Closeable {
      * @param data
      */
     public ByteBuffer(byte[] data) {
-        this(memoryFromByteArray(data));
+        this(data.length);
+        if (this.data != Pointer.NULL) {
+            this.data.write(0, data, 0, data.length);
+        }
     }
     
     /**
@@ -68,7 +82,49 @@ public class ByteBuffer extends Structure implements Closeable {
      * @param str
      */
     public ByteBuffer(String str) {
-        this(memoryFromString(str));
+        this(str.length() + 1);
+        this.data.setString(0, str, StandardCharsets.US_ASCII.name());
+    }
+
+    /**
+     * Takes a block of 'size' bytes from the {@link NativeArena}.
+     *
+     * @param size
+     */
+    private ByteBuffer(int size) {
+        this.len = size;
+        this.data = size == 0 ? Pointer.NULL : NativeArena.acquire(size);
+        this.pooled = true;
+    }
+
+    /**
+     * Takes over the first 'len' bytes of a block.
+     *
+     * @param block
+     * @param len
+     * @param pooled whether the block was taken from the {@link NativeArena}.
+     */
+    ByteBuffer(Memory block, long len, boolean pooled) {
+        this.len = len;
+        this.data = block;
+        this.pooled = pooled;
+    }
+
+    /**
+     * Points at the remaining bytes of a direct buffer, without copying them.
+     * The buffer memory is not owned, so closing this structure does not free
+     * it.
+     *
+     * @param buffer a direct buffer.
+     * @throws IllegalArgumentException if the buffer is not direct.
+     */
+    public ByteBuffer(java.nio.ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer is not direct.");
+        }
+        this.len = buffer.remaining();
+        this.data = len == 0 ? Pointer.NULL : Native.getDirectBufferPointer(buffer).share(buffer.position());
+        this.direct = buffer;
     }
     
     /**
@@ -77,10 +133,14 @@ public class ByteBuffer extends Structure implements Closeable {
     @Override
     public void close() {
         if (data != Pointer.NULL) {
-            Memory mem = (Memory) data;
-            mem.close();
+            if (pooled) {
+                NativeArena.release((Memory) data, len);
+            } else if (data instanceof Memory) {
+                ((Memory) data).close();
+            }
             data = Pointer.NULL;
             len = 0;
+            direct = null;
         }
     }
     
@@ -144,6 +204,18 @@ public class ByteBuffer extends Structure implements Closeable {
         public ByValue(String data) {
             super(data);
         }
+
+        /**
+         *
+         * @param data
+         */
+        public ByValue(java.nio.ByteBuffer data) {
+            super(data);
+        }
+
+        ByValue(Memory block, long len, boolean pooled) {
+            super(block, len, pooled);
+        }
     }
 
     /**
@@ -180,5 +252,13 @@ public class ByteBuffer extends Structure implements Closeable {
         public ByReference(String data) {
             super(data);
         }
+
+        /**
+         *
+         * @param data
+         */
+        public ByReference(java.nio.ByteBuffer data) {
+            super(data);
+        }
     }
 }
@@ -0,0 +1,172 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar.lib;
+
+import com.sun.jna.Memory;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of native memory blocks for FFI argument buffers. Blocks come in power
+ * of two size classes, from {@value #MIN_BLOCK} to {@value #MAX_BLOCK} bytes,
+ * and each thread keeps its own free list per class, so acquiring and
+ * releasing a block needs no locking and, once warm, no allocation. Larger
+ * requests are allocated and freed as usual.
+ * <p>
+ * Arguments may hold secrets, so the used part of a block is zeroed before it
+ * is returned to the pool.
+ *
+ * @author cmachado
+ */
+public final class NativeArena {
+
+    /**
+     * Size of the smallest block.
+     */
+    public static final int MIN_BLOCK = 1 << 6;
+
+    /**
+     * Size of the largest pooled block.
+     */
+    public static final int MAX_BLOCK = 1 << 16;
+
+    /**
+     * Maximum number of free blocks kept per thread and size class.
+     */
+    public static final int MAX_FREE_BLOCKS = 16;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BLOCK);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_BLOCK) - MIN_SHIFT + 1;
+
+    private static final ThreadLocal<FreeLists> FREE_LISTS = ThreadLocal.withInitial(FreeLists::new);
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder BYTES_OUTSTANDING = new LongAdder();
+
+    private NativeArena() {
+    }
+
+    /**
+     * Takes a block of at least 'size' bytes.
+     *
+     * @param size
+     * @return the block, which must be given back to
+     * {@link #release(com.sun.jna.Memory, long)}.
+     */
+    static Memory acquire(long size) {
+        int sizeClass = sizeClass(size);
+        Memory block = null;
+        if (sizeClass < CLASSES) {
+            block = FREE_LISTS.get().lists[sizeClass].poll();
+        }
+        if (block != null) {
+            HITS.increment();
+        } else {
+            MISSES.increment();
+            block = new Memory(sizeClass < CLASSES ? MIN_BLOCK << sizeClass : size);
+        }
+        BYTES_OUTSTANDING.add(block.size());
+        return block;
+    }
+
+    /**
+     * Zeroes the first 'used' bytes of a block and returns it to the pool of
+     * the calling thread, or frees it if that pool is full.
+     *
+     * @param block a block taken from {@link #acquire(long)}.
+     * @param used
+     */
+    static void release(Memory block, long used) {
+        BYTES_OUTSTANDING.add(-block.size());
+        if (used > 0) {
+            block.clear(Math.min(used, block.size()));
+        }
+        int sizeClass = sizeClass(block.size());
+        if (sizeClass < CLASSES) {
+            ArrayDeque<Memory> list = FREE_LISTS.get().lists[sizeClass];
+            if (list.size() < MAX_FREE_BLOCKS) {
+                list.push(block);
+                return;
+            }
+        }
+        block.close();
+    }
+
+    /**
+     *
+     * @return the number of blocks served from a pool.
+     */
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    /**
+     *
+     * @return the number of blocks that had to be allocated.
+     */
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    /**
+     *
+     * @return the ratio of blocks served from a pool, between 0 and 1.
+     */
+    public static double getHitRate() {
+        long hits = HITS.sum();
+        long total = hits + MISSES.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     *
+     * @return the size of all blocks acquired and not yet released.
+     */
+    public static long getBytesOutstanding() {
+        return BYTES_OUTSTANDING.sum();
+    }
+
+    /**
+     *
+     * @param size
+     * @return the index of the smallest class that fits 'size', or a value not
+     * below the number of classes if it fits none.
+     */
+    private static int sizeClass(long size) {
+        if (size <= MIN_BLOCK) {
+            return 0;
+        }
+        if (size > MAX_BLOCK) {
+            return CLASSES;
+        }
+        return 64 - Long.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * Free blocks of one thread, per size class.
+     */
+    private static final class FreeLists {
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final ArrayDeque<Memory>[] lists = new ArrayDeque[CLASSES];
+
+        FreeLists() {
+            for (int i = 0; i < CLASSES; i++) {
+                lists[i] = new ArrayDeque<>(MAX_FREE_BLOCKS);
+            }
+        }
+    }
+}
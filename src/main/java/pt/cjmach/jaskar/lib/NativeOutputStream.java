@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar.lib;
+
+import com.sun.jna.Memory;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Output stream that writes into a block of native memory taken from the
+ * {@link NativeArena}, moving to a block twice as large when it runs out of
+ * space. The written bytes can then be handed to the library as a
+ * {@link ByteBuffer} without copying them to the Java heap.
+ *
+ * @author cmachado
+ */
+public final class NativeOutputStream extends OutputStream {
+
+    private Memory block;
+    private long count;
+
+    /**
+     *
+     */
+    public NativeOutputStream() {
+        this(NativeArena.MIN_BLOCK);
+    }
+
+    /**
+     *
+     * @param initialSize
+     */
+    public NativeOutputStream(int initialSize) {
+        this.block = NativeArena.acquire(Math.max(1, initialSize));
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        block.setByte(count++, (byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureCapacity(count + len);
+        block.write(count, b, off, len);
+        count += len;
+    }
+
+    /**
+     *
+     * @return the number of bytes written.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Hands the written bytes over to a buffer, which returns the memory to
+     * the arena when closed. Nothing else can be written afterwards.
+     *
+     * @return
+     */
+    public ByteBuffer.ByValue toByteBuffer() {
+        Memory written = Objects.requireNonNull(block, "Stream is closed.");
+        block = null;
+        return new ByteBuffer.ByValue(written, count, true);
+    }
+
+    /**
+     * Returns the memory to the arena, unless it was handed over to a buffer.
+     */
+    @Override
+    public void close() {
+        if (block != null) {
+            NativeArena.release(block, count);
+            block = null;
+        }
+    }
+
+    private void ensureCapacity(long needed) {
+        Memory current = Objects.requireNonNull(block, "Stream is closed.");
+        if (needed <= current.size()) {
+            return;
+        }
+        Memory larger = NativeArena.acquire(Math.max(needed, current.size() * 2));
+        if (count > 0) {
+            larger.getByteBuffer(0, count).put(current.getByteBuffer(0, count));
+        }
+        NativeArena.release(current, count);
+        block = larger;
+    }
+}
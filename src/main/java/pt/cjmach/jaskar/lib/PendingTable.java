@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2025 Carlos Machado
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package pt.cjmach.jaskar.lib;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps callback ids to the operations waiting for them. Ids come from an
+ * atomic sequence, so consecutive operations land on consecutive slots of a
+ * fixed ring and are registered and claimed with a single CAS. Only when more
+ * operations than slots are in flight does an id spill into an overflow map.
+ *
+ * @author cmachado
+ */
+final class PendingTable {
+
+    private static final int SLOTS = 1 << 12;
+    private static final int MASK = SLOTS - 1;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<AskarCallback<?>> slots = new AtomicReferenceArray<>(SLOTS);
+    private final ConcurrentHashMap<Long, AskarCallback<?>> overflow = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @return a new, unique, callback id.
+     */
+    long nextId() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     *
+     * @param id
+     * @param op
+     */
+    void put(long id, AskarCallback<?> op) {
+        if (!slots.compareAndSet((int) (id & MASK), null, op)) {
+            overflow.put(id, op);
+        }
+    }
+
+    /**
+     * Claims the operation registered with the given id. Each id can be
+     * claimed only once.
+     *
+     * @param id
+     * @return the operation, or {@code null} if unknown or already claimed.
+     */
+    AskarCallback<?> remove(long id) {
+        int slot = (int) (id & MASK);
+        AskarCallback<?> op = slots.get(slot);
+        if (op != null && op.getId() == id && slots.compareAndSet(slot, op, null)) {
+            return op;
+        }
+        return overflow.remove(id);
+    }
+}
@@ -63,6 +63,23 @@ public class SecretBuffer extends Structure implements Closeable {
         return bytes;
     }
 
+    /**
+     * Copies the bytes into the remaining space of a buffer, advancing its
+     * position. Direct buffers are filled with a native copy.
+     *
+     * @param dst
+     * @return the number of bytes copied.
+     * @throws java.nio.BufferOverflowException if the buffer has not enough
+     * space left.
+     */
+    public int getBytes(java.nio.ByteBuffer dst) {
+        int length = (int) len;
+        if (length > 0) {
+            dst.put(data.getByteBuffer(0, length));
+        }
+        return length;
+    }
+
     /**
      *
      */
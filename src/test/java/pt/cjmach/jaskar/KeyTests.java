@@ -19,6 +19,7 @@ import java.security.SecureRandom;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 import pt.cjmach.jaskar.lib.AskarLibrary;
+import pt.cjmach.jaskar.lib.NativeArena;
 
 /**
  *
@@ -37,6 +38,24 @@ public class KeyTests {
         }
     }
 
+    @Test
+    public void givenValidKey_whenSigningRepeatedly_thenArgumentBuffersAreReused() {
+        try (Key keyPair = Key.generate(KeyAlgorithm.ED25519, false)) {
+            byte[] message = "message".getBytes(AskarLibrary.DEFAULT_CHARSET);
+            keyPair.signMessage(message);
+            long hits = NativeArena.getHits();
+            long outstanding = NativeArena.getBytesOutstanding();
+            for (int i = 0; i < 10; i++) {
+                byte[] signature = keyPair.signMessage(message);
+                assertTrue(keyPair.verifySignature(message, signature));
+            }
+            assertTrue(NativeArena.getHits() >= hits + 30);
+            assertEquals(outstanding, NativeArena.getBytesOutstanding());
+        } catch (AskarException ex) {
+            fail(ex);
+        }
+    }
+
     @Test
     public void givenValidKey_whenSigningMessage_thenVerifiesSignature() {
         try (Key keyPair = Key.generate(KeyAlgorithm.EC_SECP_256R1, false)) {
@@ -15,12 +15,32 @@
  */
 package pt.cjmach.jaskar;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pt.cjmach.jaskar.lib.AskarLibrary;
+import pt.cjmach.jaskar.lib.ErrorCode;
 
 /**
  *
@@ -39,6 +59,30 @@ public class StoreTests {
     public void closeAskar() throws AskarException {
         store.close(true);
     }
+
+    /**
+     * Inserts records "entry0" to "entry{count - 1}" in "testcat", with value
+     * "test", in a single committed batch.
+     * 
+     * @param count
+     * @param tags the tags of each record, by index.
+     */
+    private void insertEntries(int count, IntFunction<String> tags) {
+        insertEntries(count, tags, i -> "test".getBytes(AskarLibrary.DEFAULT_CHARSET));
+    }
+
+    private void insertEntries(int count, IntFunction<String> tags, IntFunction<byte[]> values) {
+        try (Session session = store.openSession(true)) {
+            SessionBatch batch = session.batch();
+            for (int i = 0; i < count; i++) {
+                batch.insert("testcat", "entry" + i, tags.apply(i), values.apply(i), -1);
+            }
+            assertTrue(batch.execute().isSuccess());
+            session.commit();
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
     
     @Test
     public void givenOpenStore_whenInserting_thenCountIsIncremented() {
@@ -99,6 +143,641 @@ public class StoreTests {
         }
     }
 
+    @Test
+    public void givenDirectBuffer_whenInsertingAndFetching_thenValuesAreEqual() {
+        try (Session session = store.openSession()) {
+            byte[] expected = "test".getBytes(AskarLibrary.DEFAULT_CHARSET);
+            ByteBuffer value = ByteBuffer.allocateDirect(16);
+            value.put(expected).flip();
+            session.insert("testcat", "testentry", null, value, -1);
+            assertEquals(0, value.position());
+
+            ByteBuffer dst = ByteBuffer.allocateDirect(16);
+            try (Entry entry = session.fetch("testcat", "testentry", false)) {
+                assertEquals(expected.length, entry.getValue(dst));
+            }
+            dst.flip();
+            byte[] actual = new byte[dst.remaining()];
+            dst.get(actual);
+            assertArrayEquals(expected, actual);
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenTypedSession_whenInsertingAndFetching_thenObjectsAreEqual() {
+        try (Session session = store.openSession()) {
+            TypedSession<Map<String, Integer>> typed = session.typed("testcat", JacksonCodecs.json().forType(new TypeReference<Map<String, Integer>>() {}));
+            typed.insert("testentry", Map.of("a", 1, "b", 2), null, -1);
+            assertEquals(Map.of("a", 1, "b", 2), typed.fetch("testentry", false));
+            assertNull(typed.fetch("missing", false));
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenStructuredTags_whenInsertingAndFetching_thenTagsAreEqual() {
+        try (Session session = store.openSession()) {
+            Tags tags = Tags.builder()
+                    .encrypted("color", "red", "blue")
+                    .plaintext("seq", "001")
+                    .build();
+            session.insert("testcat", "testentry", "test".getBytes(AskarLibrary.DEFAULT_CHARSET), tags, -1);
+            assertEquals(1, session.count("testcat", "{\"~seq\":\"001\"}"));
+            try (Entry entry = session.fetch("testcat", "testentry", false)) {
+                Tags fetched = entry.getTagSet();
+                assertEquals("001", fetched.get("~seq"));
+                assertEquals(Set.of("red", "blue"), Set.copyOf(fetched.getAll("color")));
+            }
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenWqlFilters_whenCounting_thenMatchingRecordsAreCounted() {
+        try (Session session = store.openSession()) {
+            byte[] value = "test".getBytes(AskarLibrary.DEFAULT_CHARSET);
+            session.insert("testcat", "entry1", "{\"color\":\"red\",\"~seq\":\"1\"}", value, -1);
+            session.insert("testcat", "entry2", "{\"color\":\"blue\",\"~seq\":\"2\"}", value, -1);
+            session.insert("testcat", "entry3", "{\"~seq\":\"3\"}", value, -1);
+
+            Wql red = Wql.eq("color", "red");
+            assertSame(red, Wql.eq("color", "red"));
+            assertEquals("{\"color\":\"red\"}", red.toJson());
+            assertEquals(1, session.count("testcat", red.toJson()));
+            assertEquals(2, session.count("testcat", Wql.gt("~seq", "1").toJson()));
+            assertEquals(2, session.count("testcat", Wql.or(red, Wql.eq("color", "blue")).toJson()));
+            assertEquals(2, session.count("testcat", Wql.exist("color").toJson()));
+            assertEquals(3, session.count("testcat", Wql.all().toJson()));
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenManyOneOffFilters_whenBuilding_thenHotFilterStaysCached() {
+        Wql hot = Wql.eq("color", "hot");
+        for (int i = 0; i < 8; i++) {
+            assertSame(hot, Wql.eq("color", "hot"));
+        }
+        for (int i = 0; i < 4 * Wql.CACHE_SIZE; i++) {
+            Wql.eq("id", "id" + i);
+        }
+        assertSame(hot, Wql.eq("color", "hot"));
+        assertSame(Wql.in("color", "a", "b"), Wql.in("color", "a", "b"));
+        assertNotSame(Wql.in("color", "a", "b"), Wql.in("color", "a", "c"));
+    }
+
+    @Test
+    public void givenCachingStore_whenWritingThroughSession_thenCachedRecordIsInvalidated() {
+        try (CachingStore cache = new CachingStore(store, 1 << 20, null)) {
+            try (Session session = store.openSession()) {
+                session.insert("testcat", "testentry", "{\"tag\":\"a\"}", "first".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            }
+            EntryRecord first = cache.fetch("testcat", "testentry");
+            assertSame(first, cache.fetch("testcat", "testentry"));
+            assertEquals(1, cache.stats().getHitCount());
+            
+            try (Session session = store.openSession()) {
+                session.replace("testcat", "testentry", null, "second".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            }
+            EntryRecord second = cache.fetch("testcat", "testentry");
+            assertArrayEquals("second".getBytes(AskarLibrary.DEFAULT_CHARSET), second.getValue());
+            
+            try (Session session = store.openSession()) {
+                session.removeAll("testcat", "{}");
+            }
+            assertNull(cache.fetch("testcat", "testentry"));
+            assertEquals(3, cache.stats().getMissCount());
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenNameFilter_whenFetching_thenOnlyMissingRecordsAreSkipped() {
+        try {
+            try (Session session = store.openSession()) {
+                session.insert("testcat", "before", null, "a".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            }
+            store.enableNameFilter(null, "testcat", 1000, 0.01);
+            try (Session session = store.openSession()) {
+                session.insert("testcat", "after", null, "b".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+                try (Entry before = session.fetch("testcat", "before", false);
+                        Entry after = session.fetch("testcat", "after", false)) {
+                    assertNotNull(before);
+                    assertNotNull(after);
+                }
+                assertNull(session.fetch("testcat", "missing", false));
+            }
+            store.disableNameFilter(null, "testcat");
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenQueryCache_whenWritingToCategory_thenCachedQueriesAreInvalidated() {
+        try (QueryCache cache = new QueryCache(store, 1 << 20, null); Session session = store.openSession()) {
+            session.insert("testcat", "entry1", "{\"~n\":\"1\"}", "a".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            String filter = Wql.eq("~n", "1").toJson();
+            assertEquals(1, cache.count(session, "testcat", filter));
+            assertEquals(1, cache.count(session, "testcat", filter));
+            assertEquals(1, cache.fetchAll(session, "testcat", filter, -1, "id", false).size());
+            assertEquals(1, cache.stats().getHitCount());
+            
+            session.insert("testcat", "entry2", "{\"~n\":\"1\"}", "b".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            assertEquals(2, cache.count(session, "testcat", filter));
+            assertEquals(2, cache.fetchAll(session, "testcat", filter, -1, "id", false).size());
+            assertEquals(1, cache.stats().getHitCount());
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenWqlFilters_whenEvaluatingLocally_thenMatchesAreTheSameAsStore() {
+        Wql[] filters = {
+            Wql.all(),
+            Wql.eq("color", "red"),
+            Wql.neq("color", "red"),
+            Wql.gte("~n", "3"),
+            Wql.like("~n", "1%"),
+            Wql.in("color", "blue", "green"),
+            Wql.exist("shape"),
+            Wql.not(Wql.and(Wql.eq("color", "red"), Wql.lt("~n", "5")))
+        };
+        try (Session session = store.openSession()) {
+            String[] colors = {"red", "blue", "green"};
+            for (int i = 0; i < 12; i++) {
+                Tags.Builder tags = Tags.builder().encrypted("color", colors[i % 3]).plaintext("n", Integer.toString(i));
+                if (i % 4 == 0) {
+                    tags.encrypted("shape", "square", "round");
+                }
+                session.insert("testcat", "entry" + i, new byte[0], tags.build(), -1);
+            }
+            try (EntryList entries = session.fetchAll("testcat", "{}", -1, "id", false, false)) {
+                EntryRecord[] records = entries.materialize(false, false);
+                for (Wql filter : filters) {
+                    long local = 0;
+                    for (EntryRecord record : records) {
+                        if (filter.matches(record.getTagSet())) {
+                            local++;
+                        }
+                    }
+                    assertEquals(session.count("testcat", filter.toJson()), local, filter.toJson());
+                }
+            }
+            assertThrows(IllegalArgumentException.class, () -> Wql.gt("color", "a").toPredicate());
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenMaterializedCategory_whenWritingThroughStore_thenSnapshotIsUpdated() {
+        try (Session session = store.openSession()) {
+            session.insert("testcat", "entry1", "{\"color\":\"red\"}", "a".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            session.insert("testcat", "entry2", "{\"color\":\"blue\"}", "b".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            try (MaterializedCategory view = store.materialize(null, "testcat")) {
+                assertEquals(2, view.size());
+                assertArrayEquals("a".getBytes(AskarLibrary.DEFAULT_CHARSET), view.get("entry1").getValue());
+                assertEquals("entry2", view.findByTag("color", "blue").get(0).getName());
+                assertEquals(1, view.find(Wql.eq("color", "red").toJson()).size());
+                
+                session.insert("testcat", "entry3", "{\"color\":\"red\"}", "c".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+                session.remove("testcat", "entry1");
+                for (int i = 0; i < 100 && (view.get("entry3") == null || view.get("entry1") != null); i++) {
+                    Thread.sleep(50);
+                }
+                assertNotNull(view.get("entry3"));
+                assertNull(view.get("entry1"));
+                assertEquals(1, view.findByTag("color", "red").size());
+                
+                view.refresh();
+                assertEquals(2, view.size());
+                assertSame(view.get("entry2"), view.findByTag("color", "blue").get(0));
+            }
+            assertThrows(IllegalArgumentException.class, () -> store.materialize(null, "testcat", Duration.ZERO));
+        } catch (AskarException | IOException | InterruptedException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenWriteBehindStore_whenInsertingConcurrently_thenEveryRecordIsCommitted() {
+        try {
+            List<CompletableFuture<Void>> inserts = new ArrayList<>();
+            CompletableFuture<Void> duplicate;
+            try (WriteBehindStore writer = new WriteBehindStore(store, null, 64, Duration.ofMillis(20))) {
+                Thread[] threads = new Thread[4];
+                for (int t = 0; t < threads.length; t++) {
+                    int offset = t * 100;
+                    threads[t] = new Thread(() -> {
+                        for (int i = offset; i < offset + 100; i++) {
+                            try {
+                                CompletableFuture<Void> insert = writer.insert("testcat", "entry" + i, null, "v".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+                                synchronized (inserts) {
+                                    inserts.add(insert);
+                                }
+                            } catch (AskarException ex) {
+                                fail(ex);
+                            }
+                        }
+                    });
+                    threads[t].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                writer.flush();
+                duplicate = writer.insert("testcat", "entry0", null, "v".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            }
+            CompletableFuture.allOf(inserts.toArray(new CompletableFuture<?>[0])).join();
+            assertTrue(duplicate.isCompletedExceptionally());
+            try (Session session = store.openSession()) {
+                assertEquals(400, session.count("testcat", null));
+            }
+        } catch (AskarException | IOException | InterruptedException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenDuplicateInsideGroup_whenWritingBehind_thenOnlyDuplicateFails() {
+        byte[] value = "v".getBytes(AskarLibrary.DEFAULT_CHARSET);
+        try {
+            List<CompletableFuture<Void>> inserts = new ArrayList<>();
+            CompletableFuture<Void> duplicate;
+            try (WriteBehindStore writer = new WriteBehindStore(store, null, 64, Duration.ofMinutes(1))) {
+                writer.insert("testcat", "entry5", null, value, -1);
+                writer.flush();
+                for (int i = 0; i < 5; i++) {
+                    inserts.add(writer.insert("testcat", "entry" + i, null, value, -1));
+                }
+                duplicate = writer.insert("testcat", "entry5", null, value, -1);
+                for (int i = 6; i < 10; i++) {
+                    inserts.add(writer.insert("testcat", "entry" + i, null, value, -1));
+                }
+                writer.flush();
+            }
+            CompletableFuture.allOf(inserts.toArray(new CompletableFuture<?>[0])).join();
+            CompletionException ex = assertThrows(CompletionException.class, duplicate::join);
+            assertEquals(ErrorCode.DUPLICATE, ((AskarException) ex.getCause()).getErrorCode());
+            try (Session session = store.openSession()) {
+                assertEquals(10, session.count("testcat", null));
+            }
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenSessionPool_whenBorrowingRepeatedly_thenSessionsAreReused() {
+        try (SessionPool pool = store.createSessionPool(2, Duration.ofMinutes(1), Duration.ofMillis(100))) {
+            for (int i = 0; i < 10; i++) {
+                try (PooledSession session = pool.borrow()) {
+                    session.insert("testcat", "entry" + i, null, "v".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+                }
+            }
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(9, pool.getReusedCount());
+            
+            PooledSession first = pool.borrow();
+            PooledSession second = pool.borrow();
+            assertThrows(AskarException.class, () -> pool.borrow());
+            assertEquals(1, pool.getTimeoutCount());
+            first.close();
+            second.invalidate();
+            second.close();
+            assertEquals(1, pool.getIdleCount());
+            try (PooledSession session = pool.borrow()) {
+                assertEquals(10, session.count("testcat", null));
+                // the returned checkout must not reach the session handed out again.
+                assertThrows(IllegalStateException.class, () -> first.count("testcat", null));
+                assertThrows(IllegalStateException.class, () -> first.invalidate());
+                first.close();
+                assertEquals(10, session.count("testcat", null));
+            }
+            for (int i = 0; i < 4; i++) {
+                try (Session timed = pool.borrow().withTimeout(Duration.ofSeconds(5))) {
+                    assertEquals(10, timed.count("testcat", null));
+                }
+            }
+            assertEquals(1, pool.getIdleCount());
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenConcurrencyLimit_whenOpeningTooManySessions_thenExcessIsRejected() {
+        store.setConcurrencyLimiter(new ConcurrencyLimiter(1, 1, 1, 0, Duration.ZERO));
+        try {
+            try (Session session = store.openSession()) {
+                AskarException ex = assertThrows(AskarException.class, () -> store.openSession());
+                assertEquals(ErrorCode.BUSY, ex.getErrorCode());
+                assertEquals(0, session.count("testcat", null));
+            }
+            try (Session session = store.openSession()) {
+                assertEquals(0, session.count("testcat", null));
+            }
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        } finally {
+            store.setConcurrencyLimiter(null);
+        }
+    }
+
+    @Test
+    public void givenViewTimeout_whenWaitingForSessionPermit_thenWaitIsCutShort() {
+        store.setConcurrencyLimiter(new ConcurrencyLimiter(1, 1, 1, 1, Duration.ofMinutes(1)));
+        try (Session session = store.openSession()) {
+            Store view = store.withTimeout(Duration.ofMillis(100));
+            long startedAt = System.nanoTime();
+            AskarException ex = assertThrows(AskarException.class, () -> view.openSession());
+            assertEquals(ErrorCode.BUSY, ex.getErrorCode());
+            assertTrue(System.nanoTime() - startedAt < Duration.ofSeconds(10).toNanos());
+            assertEquals(0, session.count("testcat", null));
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        } finally {
+            store.setConcurrencyLimiter(null);
+        }
+    }
+
+    @Test
+    public void givenBurstOfSlowStarts_whenAdjustingLimit_thenLimitDecreasesOnce() throws AskarException, InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 20, 0, Duration.ZERO);
+        limiter.tryAcquire().started(false);
+        List<ConcurrencyLimiter.Permit> burst = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            burst.add(limiter.tryAcquire());
+        }
+        Thread.sleep(20);
+        for (ConcurrencyLimiter.Permit permit : burst) {
+            permit.started(false);
+        }
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void givenTimeout_whenOperationIsLate_thenCallerIsReleasedAndResultIsFreed() {
+        CompletableFuture<Closeable> late = new CompletableFuture<>();
+        AskarException ex = assertThrows(AskarException.class, () -> Futures.join(late, Duration.ofMillis(20)));
+        assertTrue(ex.getCause() instanceof TimeoutException);
+        boolean[] closed = {false};
+        late.complete(() -> closed[0] = true);
+        assertTrue(closed[0]);
+        
+        try (Session session = store.withTimeout(Duration.ofSeconds(5)).openSession()) {
+            assertEquals(Duration.ofSeconds(5), session.getTimeout());
+            session.insert("testcat", "testentry", null, "v".getBytes(AskarLibrary.DEFAULT_CHARSET), -1);
+            assertEquals(1, session.count("testcat", null));
+        } catch (AskarException | IOException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    public void givenExpectedConflicts_whenTryingUpdates_thenStatusIsReturned() {
+        try (Session session = store.openSession()) {
+            byte[] value = "test".getBytes(AskarLibrary.DEFAULT_CHARSET);
+            assertEquals(UpdateStatus.OK, session.tryInsert("testcat", "testentry", null, value, -1));
+            assertEquals(UpdateStatus.DUPLICATE, session.tryInsert("testcat", "testentry", null, value, -1));
+            assertEquals(UpdateStatus.OK, session.tryReplace("testcat", "testentry", value, Tags.empty(), -1));
+            assertEquals(UpdateStatus.NOT_FOUND, session.tryReplace("testcat", "missing", null, value, -1));
+            assertEquals(UpdateStatus.OK, session.tryRemove("testcat", "testentry"));
+            assertEquals(UpdateStatus.NOT_FOUND, session.tryRemove("testcat", "testentry"));
+            assertEquals(0, session.count("testcat", null));
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenOpenTransaction_whenExecutingBatch_thenFailuresAreReportedPerOperation() {
+        try (Session session = store.openSession(true)) {
+            byte[] value = "test".getBytes(AskarLibrary.DEFAULT_CHARSET);
+            SessionBatch.Result result = session.batch()
+                    .insert("testcat", "entry1", null, value, -1)
+                    .insert("testcat", "entry2", null, value, -1)
+                    .insert("testcat", "entry1", null, value, -1)
+                    .remove("testcat", "entry2")
+                    .execute();
+            assertEquals(4, result.size());
+            assertEquals(1, result.getFailures().size());
+            assertEquals(2, result.getFailures().get(0).getIndex());
+            assertEquals(ErrorCode.DUPLICATE, result.getFailures().get(0).getCause().getErrorCode());
+            assertEquals(1, session.count("testcat", null));
+            session.commit();
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenLargeBatch_whenExecuting_thenNoUpdateIsRejectedAsBusy() {
+        try (Session session = store.openSession()) {
+            byte[] value = "test".getBytes(AskarLibrary.DEFAULT_CHARSET);
+            SessionBatch batch = session.batch();
+            for (int i = 0; i < 100; i++) {
+                batch.insert("testcat", "entry" + i, null, value, -1);
+            }
+            SessionBatch.Result result = batch.execute();
+            assertTrue(result.isSuccess(), () -> result.getFailures().get(0).getCause().getMessage());
+            assertEquals(100, session.count("testcat", null));
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenManyEntries_whenIteratingScan_thenEveryRowIsVisited() {
+        insertEntries(100, i -> null);
+        try (ScanCursor cursor = store.scanStart(null, "testcat", null, 0, -1, null, false).cursor(2)) {
+            int count = 0;
+            while (cursor.hasNext()) {
+                Entry entry = cursor.next();
+                assertArrayEquals("test".getBytes(AskarLibrary.DEFAULT_CHARSET), entry.getValue());
+                count++;
+            }
+            assertEquals(100, count);
+        } catch (AskarException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenScanPublisher_whenRequestingFewRows_thenDeliveryIsBoundedAndCancelFreesScan() throws InterruptedException {
+        insertEntries(100, i -> null);
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicBoolean ended = new AtomicBoolean();
+        List<Flow.Subscription> subscriptions = new ArrayList<>();
+        List<EntryRecord> received = Collections.synchronizedList(new ArrayList<>());
+        store.async().scanPublisher(null, "testcat", null, 0, -1, null, false).subscribe(new Flow.Subscriber<EntryRecord>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriptions.add(subscription);
+                subscription.request(3);
+            }
+
+            @Override
+            public void onNext(EntryRecord item) {
+                received.add(item);
+                delivered.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                ended.set(true);
+            }
+
+            @Override
+            public void onComplete() {
+                ended.set(true);
+            }
+        });
+        for (int i = 0; i < 100 && delivered.get() < 3; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertEquals(3, delivered.get());
+        assertFalse(ended.get());
+
+        ScanPublisher.ScanSubscription subscription = (ScanPublisher.ScanSubscription) subscriptions.get(0);
+        assertFalse(subscription.isReleased());
+        subscription.cancel();
+        for (int i = 0; i < 100 && !subscription.isReleased(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(subscription.isReleased());
+        subscription.request(10);
+        assertEquals(3, delivered.get());
+        for (EntryRecord record : received) {
+            assertEquals("testcat", record.getCategory());
+            assertTrue(record.getName().startsWith("entry"));
+        }
+    }
+
+    @Test
+    public void givenManyEntries_whenStreamingScan_thenEveryRowIsSeenOnce() {
+        insertEntries(100, i -> null);
+        try (Stream<EntryRecord> stream = store.scanStream(null, "testcat", null, 0, -1, null, false)) {
+            List<String> names = stream.map(EntryRecord::getName).collect(Collectors.toList());
+            assertEquals(100, names.size());
+            assertEquals(100, new HashSet<>(names).size());
+        } catch (AskarException ex) {
+            fail(ex);
+        }
+        List<EntryRecord> records = null;
+        try (Stream<EntryRecord> stream = store.scanStream(null, "testcat", null, 0, -1, null, false)) {
+            records = stream.parallel().collect(Collectors.toList());
+        } catch (AskarException ex) {
+            fail(ex);
+        }
+        // the records outlive the stream and its batches.
+        Set<String> names = records.stream().map(EntryRecord::getName).collect(Collectors.toSet());
+        assertEquals(100, records.size());
+        assertEquals(100, names.size());
+    }
+
+    @Test
+    public void givenManyEntries_whenScanningInPartitions_thenEveryRowIsVisitedOnce() {
+        insertEntries(100, i -> null);
+        try (ParallelScan scan = store.parallelScan(null, "testcat", null, null, false, 4, false)) {
+            Set<String> names = new HashSet<>();
+            while (scan.hasNext()) {
+                assertTrue(names.add(scan.next().getName()));
+            }
+            assertEquals(4, scan.getPartitionCount());
+            assertEquals(100, names.size());
+        } catch (AskarException ex) {
+            fail(ex);
+        }
+        try (ParallelScan scan = store.withTimeout(Duration.ofSeconds(7)).parallelScan(null, "testcat", null, "id", false, 4, true)) {
+            assertEquals(Duration.ofSeconds(7), scan.getTimeout());
+            int i = 0;
+            while (scan.hasNext()) {
+                assertEquals("entry" + i++, scan.next().getName());
+            }
+            assertEquals(100, i);
+        } catch (AskarException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenManyEntries_whenMaterializing_thenRecordsMatchRows() {
+        insertEntries(600, i -> "{\"tag\":\"a\"}", i -> ("value" + i).getBytes(AskarLibrary.DEFAULT_CHARSET));
+        try (Session session = store.openSession(); EntryList entries = session.fetchAll("testcat", "{}", -1, "id", false, false)) {
+            EntryRecord[] records = entries.materialize(true, true);
+            assertEquals(600, records.length);
+            for (EntryRecord record : records) {
+                String suffix = record.getName().substring("entry".length());
+                assertEquals("testcat", record.getCategory());
+                assertArrayEquals(("value" + suffix).getBytes(AskarLibrary.DEFAULT_CHARSET), record.getValue());
+            }
+            EntryRecord[] keys = entries.materialize(false, false);
+            assertEquals(records[0].getName(), keys[0].getName());
+            assertFalse(keys[0].hasValue());
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenManyEntries_whenVisiting_thenViewsMatchRows() {
+        insertEntries(100, i -> "{\"tag\":\"a\"}");
+        try (Session session = store.openSession()) {
+            int[] visited = new int[1];
+            boolean completed = session.fetchAll("testcat", "{}", -1, "id", false, false, (category, name, tags, value) -> {
+                assertTrue("testcat".contentEquals(category));
+                assertTrue(name.toString().startsWith("entry"));
+                assertEquals(4, value.remaining());
+                return ++visited[0] < 10;
+            });
+            assertFalse(completed);
+            assertEquals(10, visited[0]);
+        } catch (AskarException | IOException ex) {
+            fail(ex);
+        }
+        try (Scan scan = store.scanStart(null, "testcat", null, 0, -1, null, false)) {
+            int[] visited = new int[1];
+            assertTrue(scan.visit((category, name, tags, value) -> ++visited[0] > 0));
+            assertEquals(100, visited[0]);
+        } catch (AskarException ex) {
+            fail(ex);
+        }
+    }
+
+    @Test
+    public void givenManyEntries_whenPagingByKey_thenEveryRowIsVisitedOnce() {
+        insertEntries(25, i -> String.format("{\"~seq\":\"%03d\"}", i));
+        Pager pager = store.pager(null, "testcat", null, "~seq", 10, false);
+        Set<String> names = new HashSet<>();
+        int pages = 0;
+        String token = null;
+        try {
+            do {
+                try (Pager.Page page = pager.fetch(token)) {
+                    for (int i = 0; i < page.size(); i++) {
+                        assertTrue(names.add(page.getEntries().get(i).getName()));
+                    }
+                    token = page.getContinuationToken();
+                    pages++;
+                }
+            } while (token != null);
+        } catch (AskarException ex) {
+            fail(ex);
+        }
+        assertEquals(3, pages);
+        assertEquals(25, names.size());
+    }
+
     @Test
     public void givenOpenStore_whenCopyingToAnotherStore_thenCopiedKeysAreEqual() {
         try {